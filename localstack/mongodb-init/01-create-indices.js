@@ -35,4 +35,15 @@ db.devices.createIndex(
     }
 );
 
+// Index for the devices sorted by type and MAC address
+// Each page of the devicesConnection query is a range scan of this index,
+// starting right after the cursor of the previous page
+db.devices.createIndex(
+    { "deviceTypeOrder": 1, "_id": 1 },
+    {
+        background: true,
+        name: "idx_device_type_order_id"
+    }
+);
+
 print("All indices created successfully!");
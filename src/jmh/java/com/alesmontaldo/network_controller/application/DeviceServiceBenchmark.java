@@ -0,0 +1,52 @@
+package com.alesmontaldo.network_controller.application;
+
+import com.alesmontaldo.network_controller.benchmark.TopologyGenerator;
+import com.alesmontaldo.network_controller.codegen.types.Device;
+import com.alesmontaldo.network_controller.codegen.types.DeviceResultView;
+import com.alesmontaldo.network_controller.domain.device.persistance.in_memory.DeviceInMemoryRepository;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.*;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Fork(value = 1, jvmArgsAppend = "-Xmx8g")
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+public class DeviceServiceBenchmark {
+
+    @Param({"WIDE", "DEEP", "FOREST", "RANDOM"})
+    public TopologyGenerator.Shape shape;
+
+    @Param({"1000", "10000", "100000", "1000000"})
+    public int deviceCount;
+
+    private DeviceService deviceService;
+    private Device firstTree;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        TopologyGenerator.Topology topology = TopologyGenerator.generate(shape, deviceCount);
+        DeviceInMemoryRepository repository = new DeviceInMemoryRepository();
+        topology.devices().forEach(repository::addDeviceForTesting);
+        deviceService = new DeviceService(repository);
+        firstTree = deviceService.getSubtree(topology.rootMacs().getFirst());
+    }
+
+    @Benchmark
+    public List<DeviceResultView> getAllDevicesSorted() {
+        return deviceService.getAllDevicesSorted();
+    }
+
+    @Benchmark
+    public Map<String, Object> buildSimplifiedTopology() {
+        return deviceService.buildSimplifiedTopology(firstTree);
+    }
+
+    @Benchmark
+    public List<Object> getFullTopology() {
+        return deviceService.getFullTopology();
+    }
+}
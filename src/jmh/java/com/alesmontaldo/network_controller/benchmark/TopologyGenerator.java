@@ -0,0 +1,94 @@
+package com.alesmontaldo.network_controller.benchmark;
+
+import com.alesmontaldo.network_controller.codegen.types.*;
+import com.alesmontaldo.network_controller.domain.device.MacAddress;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Generates synthetic network topologies for the benchmarks.
+ * Devices are listed so that every uplink comes before its downlinks, MAC addresses are assigned sequentially.
+ */
+public final class TopologyGenerator {
+
+    public enum Shape {
+        /** A single gateway with every other device directly attached to it */
+        WIDE,
+        /** A single gateway with chains of {@value #DEEP_CHAIN_LENGTH} devices attached to it */
+        DEEP,
+        /** Many small trees of {@value #FOREST_TREE_SIZE} devices, each node with up to {@value #FOREST_FANOUT} downlinks */
+        FOREST,
+        /** A single gateway, every other device attached to a uniformly chosen previous device */
+        RANDOM
+    }
+
+    public static final int DEEP_CHAIN_LENGTH = 1_000;
+    public static final int FOREST_TREE_SIZE = 100;
+    public static final int FOREST_FANOUT = 10;
+
+    private static final long SEED = 42;
+
+    /**
+     * @param devices The devices, uplinks before downlinks
+     * @param rootMacs The MAC addresses of the roots of the trees
+     * @param deepestMac The MAC address of one of the deepest devices
+     */
+    public record Topology(List<Device> devices, List<MacAddress> rootMacs, MacAddress deepestMac) {
+    }
+
+    private TopologyGenerator() {
+    }
+
+    public static MacAddress macOf(int index) {
+        return MacAddress.of(index + 1L);
+    }
+
+    public static Topology generate(Shape shape, int deviceCount) {
+        Random random = new Random(SEED);
+        List<Device> devices = new ArrayList<>(deviceCount);
+        List<MacAddress> rootMacs = new ArrayList<>();
+        int[] depths = new int[deviceCount];
+        int deepest = 0;
+
+        for (int i = 0; i < deviceCount; i++) {
+            int uplink = uplinkOf(shape, i, random);
+            MacAddress mac = macOf(i);
+            if (uplink < 0) {
+                devices.add(new Gateway(mac, null, DeviceType.GATEWAY, List.of()));
+                rootMacs.add(mac);
+                continue;
+            }
+
+            MacAddress uplinkMac = macOf(uplink);
+            devices.add(random.nextBoolean()
+                    ? new Switch(mac, uplinkMac, DeviceType.SWITCH, List.of())
+                    : new AccessPoint(mac, uplinkMac, DeviceType.ACCESS_POINT, List.of()));
+            depths[i] = depths[uplink] + 1;
+            if (depths[i] > depths[deepest]) {
+                deepest = i;
+            }
+        }
+
+        return new Topology(devices, rootMacs, macOf(deepest));
+    }
+
+    /**
+     * @return The index of the uplink of the i-th device, -1 for a root
+     */
+    private static int uplinkOf(Shape shape, int i, Random random) {
+        if (i == 0) {
+            return -1;
+        }
+        return switch (shape) {
+            case WIDE -> 0;
+            case DEEP -> (i - 1) % DEEP_CHAIN_LENGTH == 0 ? 0 : i - 1;
+            case FOREST -> {
+                int treeStart = i - i % FOREST_TREE_SIZE;
+                int positionInTree = i - treeStart;
+                yield positionInTree == 0 ? -1 : treeStart + (positionInTree - 1) / FOREST_FANOUT;
+            }
+            case RANDOM -> random.nextInt(i);
+        };
+    }
+}
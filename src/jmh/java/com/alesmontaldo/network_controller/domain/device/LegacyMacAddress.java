@@ -0,0 +1,39 @@
+package com.alesmontaldo.network_controller.domain.device;
+
+import java.util.Objects;
+import java.util.regex.Pattern;
+
+/**
+ * Copy of the original String backed, regular expression validated, MAC address,
+ * kept as a baseline for {@link MacAddressBenchmark}.
+ */
+final class LegacyMacAddress {
+    private static final Pattern MAC_PATTERN =
+            Pattern.compile("^([0-9A-Fa-f]{2}[:-]){5}([0-9A-Fa-f]{2})$");
+
+    private final String value;
+
+    LegacyMacAddress(String macAddress) {
+        if (macAddress == null || !MAC_PATTERN.matcher(macAddress).matches()) {
+            throw new IllegalArgumentException("Invalid MAC address: " + macAddress);
+        }
+        this.value = macAddress.toUpperCase();
+    }
+
+    String getValue() {
+        return value;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+        LegacyMacAddress that = (LegacyMacAddress) o;
+        return Objects.equals(value, that.value);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(value);
+    }
+}
@@ -0,0 +1,94 @@
+package com.alesmontaldo.network_controller.domain.device;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.*;
+
+/**
+ * Parsing, hashing and lookups of MAC addresses, compared to the original String backed implementation.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Fork(1)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+public class MacAddressBenchmark {
+
+    private static final int SIZE = 4_096; // power of two, see next()
+    private static final long SEED = 42;
+
+    private final String[] macAddresses = new String[SIZE];
+    private final MacAddress[] parsed = new MacAddress[SIZE];
+    private final LegacyMacAddress[] legacyParsed = new LegacyMacAddress[SIZE];
+    private final Map<MacAddress, Integer> index = new HashMap<>();
+    private final Map<LegacyMacAddress, Integer> legacyIndex = new HashMap<>();
+    private MacAddressInterner interner;
+    private int next;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        Random random = new Random(SEED);
+        for (int i = 0; i < SIZE; i++) {
+            long address = random.nextLong() & 0xFFFF_FFFF_FFFFL;
+            macAddresses[i] = MacAddress.of(address).getValue();
+            parsed[i] = new MacAddress(macAddresses[i]);
+            legacyParsed[i] = new LegacyMacAddress(macAddresses[i]);
+            index.put(parsed[i], i);
+            legacyIndex.put(legacyParsed[i], i);
+        }
+        interner = new MacAddressInterner(SIZE * 2);
+    }
+
+    private int next() {
+        next = (next + 1) & (SIZE - 1);
+        return next;
+    }
+
+    @Benchmark
+    public MacAddress parse() {
+        return new MacAddress(macAddresses[next()]);
+    }
+
+    @Benchmark
+    public LegacyMacAddress parseLegacy() {
+        return new LegacyMacAddress(macAddresses[next()]);
+    }
+
+    @Benchmark
+    public MacAddress parseInterned() {
+        return interner.intern(macAddresses[next()]);
+    }
+
+    @Benchmark
+    public String parseAndFormat() {
+        return new MacAddress(macAddresses[next()]).getValue();
+    }
+
+    /**
+     * Hashing a fresh instance, as done for every lookup of an address coming from a request
+     */
+    @Benchmark
+    public Integer lookup() {
+        return index.get(new MacAddress(macAddresses[next()]));
+    }
+
+    @Benchmark
+    public Integer lookupLegacy() {
+        return legacyIndex.get(new LegacyMacAddress(macAddresses[next()]));
+    }
+
+    @Benchmark
+    public boolean equalsDistinctInstances() {
+        int i = next();
+        return parsed[i].equals(parsed[(i + 1) & (SIZE - 1)]);
+    }
+
+    @Benchmark
+    public boolean equalsDistinctInstancesLegacy() {
+        int i = next();
+        return legacyParsed[i].equals(legacyParsed[(i + 1) & (SIZE - 1)]);
+    }
+}
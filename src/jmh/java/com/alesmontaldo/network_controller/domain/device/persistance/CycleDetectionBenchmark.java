@@ -0,0 +1,50 @@
+package com.alesmontaldo.network_controller.domain.device.persistance;
+
+import com.alesmontaldo.network_controller.benchmark.TopologyGenerator;
+import com.alesmontaldo.network_controller.domain.device.MacAddress;
+import com.alesmontaldo.network_controller.domain.device.persistance.in_memory.DeviceInMemoryRepository;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.*;
+
+/**
+ * Cost of the uplink chain walks done while holding the topology lock,
+ * measured from one of the deepest devices of the topology.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Fork(value = 1, jvmArgsAppend = "-Xmx8g")
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+public class CycleDetectionBenchmark {
+
+    @Param({"WIDE", "DEEP", "FOREST", "RANDOM"})
+    public TopologyGenerator.Shape shape;
+
+    @Param({"1000", "10000", "100000", "1000000"})
+    public int deviceCount;
+
+    private DeviceRepository repository;
+    private MacAddress newDeviceMac;
+    private MacAddress deepestMac;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        TopologyGenerator.Topology topology = TopologyGenerator.generate(shape, deviceCount);
+        DeviceInMemoryRepository inMemoryRepository = new DeviceInMemoryRepository();
+        topology.devices().forEach(inMemoryRepository::addDeviceForTesting);
+        repository = inMemoryRepository;
+        newDeviceMac = TopologyGenerator.macOf(deviceCount);
+        deepestMac = topology.deepestMac();
+    }
+
+    @Benchmark
+    public boolean wouldCreateCycle() {
+        return repository.wouldCreateCycle(newDeviceMac, deepestMac);
+    }
+
+    @Benchmark
+    public MacAddress findRootMac() {
+        return repository.findRootMac(deepestMac);
+    }
+}
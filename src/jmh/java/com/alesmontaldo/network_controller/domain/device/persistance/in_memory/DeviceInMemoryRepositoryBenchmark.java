@@ -0,0 +1,53 @@
+package com.alesmontaldo.network_controller.domain.device.persistance.in_memory;
+
+import com.alesmontaldo.network_controller.benchmark.TopologyGenerator;
+import com.alesmontaldo.network_controller.codegen.types.Device;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.*;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Fork(value = 1, jvmArgsAppend = "-Xmx8g")
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+public class DeviceInMemoryRepositoryBenchmark {
+
+    @Param({"WIDE", "DEEP", "FOREST", "RANDOM"})
+    public TopologyGenerator.Shape shape;
+
+    @Param({"1000", "10000", "100000", "1000000"})
+    public int deviceCount;
+
+    private TopologyGenerator.Topology topology;
+    private DeviceInMemoryRepository repository;
+    private int nextDevice;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        topology = TopologyGenerator.generate(shape, deviceCount);
+        repository = new DeviceInMemoryRepository();
+        topology.devices().forEach(repository::addDeviceForTesting);
+    }
+
+    @Benchmark
+    public Optional<Device> fetchSubtree() {
+        return repository.fetchSubtree(topology.rootMacs().getFirst());
+    }
+
+    @Benchmark
+    public List<Device> fetchForest() {
+        return repository.fetchForest();
+    }
+
+    /**
+     * Saves again an existing device, unchanged: validation, cycle detection and indexing without growing the repository.
+     */
+    @Benchmark
+    public Device save() {
+        nextDevice = (nextDevice + 1) % topology.devices().size();
+        return repository.save(topology.devices().get(nextDevice));
+    }
+}
@@ -0,0 +1,93 @@
+package com.alesmontaldo.network_controller.domain.device.persistance.in_memory;
+
+import com.alesmontaldo.network_controller.benchmark.TopologyGenerator;
+import com.alesmontaldo.network_controller.codegen.types.AccessPoint;
+import com.alesmontaldo.network_controller.codegen.types.Device;
+import com.alesmontaldo.network_controller.codegen.types.DeviceType;
+import com.alesmontaldo.network_controller.domain.device.MacAddress;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.openjdk.jmh.annotations.*;
+
+/**
+ * Throughput of the insertion of new devices with an increasing number of writer threads.
+ * Every thread inserts its own devices below the devices of a forest, so writers only conflict on the repository itself.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Fork(value = 1, jvmArgsAppend = "-Xmx8g")
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+public class DeviceInMemoryRepositoryConcurrencyBenchmark {
+
+    private static final int TOPOLOGY_SIZE = 10_000;
+
+    private final AtomicInteger nextWriter = new AtomicInteger();
+    private List<Device> topologyDevices;
+    private DeviceInMemoryRepository repository;
+
+    @State(Scope.Thread)
+    public static class Writer {
+
+        private long writerPrefix;
+        private int nextDevice;
+
+        @Setup(Level.Trial)
+        public void setUp(DeviceInMemoryRepositoryConcurrencyBenchmark benchmark) {
+            // Above the MAC addresses of the generated topology
+            writerPrefix = (long) (benchmark.nextWriter.incrementAndGet()) << 32;
+        }
+
+        Device nextDevice(List<Device> uplinks) {
+            int index = nextDevice++;
+            MacAddress uplinkMac = uplinks.get(index % uplinks.size()).getMacAddress();
+            return new AccessPoint(MacAddress.of(writerPrefix | index), uplinkMac, DeviceType.ACCESS_POINT, List.of());
+        }
+    }
+
+    @Setup(Level.Trial)
+    public void setUpTopology() {
+        topologyDevices = TopologyGenerator.generate(TopologyGenerator.Shape.FOREST, TOPOLOGY_SIZE).devices();
+    }
+
+    /**
+     * Starts every iteration from the generated topology, so that the repository doesn't grow across iterations.
+     */
+    @Setup(Level.Iteration)
+    public void setUpRepository() {
+        repository = new DeviceInMemoryRepository();
+        topologyDevices.forEach(repository::addDeviceForTesting);
+    }
+
+    @Benchmark
+    @Threads(1)
+    public Device insert_1Thread(Writer writer) {
+        return repository.save(writer.nextDevice(topologyDevices));
+    }
+
+    @Benchmark
+    @Threads(2)
+    public Device insert_2Threads(Writer writer) {
+        return repository.save(writer.nextDevice(topologyDevices));
+    }
+
+    @Benchmark
+    @Threads(4)
+    public Device insert_4Threads(Writer writer) {
+        return repository.save(writer.nextDevice(topologyDevices));
+    }
+
+    @Benchmark
+    @Threads(8)
+    public Device insert_8Threads(Writer writer) {
+        return repository.save(writer.nextDevice(topologyDevices));
+    }
+
+    @Benchmark
+    @Threads(Threads.MAX)
+    public Device insert_allCores(Writer writer) {
+        return repository.save(writer.nextDevice(topologyDevices));
+    }
+}
@@ -0,0 +1,65 @@
+package com.alesmontaldo.network_controller.domain.device.persistance.mongo_db;
+
+import com.alesmontaldo.network_controller.benchmark.TopologyGenerator;
+import com.alesmontaldo.network_controller.codegen.types.Device;
+import com.alesmontaldo.network_controller.domain.device.MacAddress;
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.*;
+
+/**
+ * Assembly of the flat $graphLookup result of the first tree of the topology into a hierarchy.
+ * Run with the gc profiler (enabled by default in build.gradle): gc.alloc.rate.norm reports the bytes
+ * allocated per assembly, which must grow linearly with the subtree size.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Fork(value = 1, jvmArgsAppend = "-Xmx8g")
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+public class DeviceHierarchyAssemblyBenchmark {
+
+    @Param({"WIDE", "DEEP", "FOREST", "RANDOM"})
+    public TopologyGenerator.Shape shape;
+
+    @Param({"1000", "10000", "100000", "1000000"})
+    public int deviceCount;
+
+    private DeviceDocument root;
+    private List<DeviceDocument> descendants;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        TopologyGenerator.Topology topology = TopologyGenerator.generate(shape, deviceCount);
+        MacAddress rootMac = topology.rootMacs().getFirst();
+
+        // Devices are listed uplinks first, so the members of the tree can be collected in one pass
+        Set<MacAddress> treeMacs = new HashSet<>();
+        descendants = new ArrayList<>();
+        for (Device device : topology.devices()) {
+            if (device.getMacAddress().equals(rootMac)) {
+                treeMacs.add(rootMac);
+                root = toDocument(device);
+            } else if (treeMacs.contains(device.getUplinkMacAddress())) {
+                treeMacs.add(device.getMacAddress());
+                descendants.add(toDocument(device));
+            }
+        }
+    }
+
+    private static DeviceDocument toDocument(Device device) {
+        return switch (device.getDeviceType()) {
+            case GATEWAY -> new GatewayDocument(device.getMacAddress(), device.getUplinkMacAddress(), device.getDeviceType());
+            case SWITCH -> new SwitchDocument(device.getMacAddress(), device.getUplinkMacAddress(), device.getDeviceType());
+            case ACCESS_POINT -> new AccessPointDocument(device.getMacAddress(), device.getUplinkMacAddress(), device.getDeviceType());
+        };
+    }
+
+    @Benchmark
+    public DeviceDocument buildDeviceHierarchy() {
+        root.setDownlinkDevices(descendants);
+        DeviceMongoRepository.buildDeviceHierarchy(root);
+        return root;
+    }
+}
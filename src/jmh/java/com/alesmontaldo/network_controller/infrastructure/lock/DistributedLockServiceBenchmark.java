@@ -0,0 +1,130 @@
+package com.alesmontaldo.network_controller.infrastructure.lock;
+
+import com.alesmontaldo.network_controller.domain.device.persistance.mongo_db.lock.TopologyLockDocument;
+import com.mongodb.client.MongoClient;
+import com.mongodb.client.MongoClients;
+import com.mongodb.client.result.DeleteResult;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import java.time.Duration;
+import java.util.Collection;
+import java.util.Set;
+import java.util.SortedSet;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import org.bson.Document;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Query;
+
+/**
+ * Latency of the acquisition and release of the global topology lock with an increasing number of contending threads.
+ * A wait timeout is configured, so busy acquisitions wait for the in-process release signal instead of failing.
+ * The lock documents are kept in memory, so only the waiter path of the service is measured, not MongoDB.
+ * The sample time mode reports the p50 and p99 of the acquire, hold and release cycle.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Fork(value = 1, jvmArgsAppend = "-Xmx8g")
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+public class DistributedLockServiceBenchmark {
+
+    private static final SortedSet<String> GLOBAL_LOCK = new TreeSet<>(Set.of(TopologyLockDocument.GLOBAL_LOCK_ID));
+
+    // Work done while holding the lock, in Blackhole.consumeCPU tokens
+    @Param({"0", "1000"})
+    public int holdTokens;
+
+    private MongoClient mongoClient;
+    private DistributedLockService lockService;
+
+    /**
+     * Stores the lock documents in a map, with the same insert and owner checked remove semantics as MongoDB.
+     * The client is never connected, it's only required to build the template.
+     */
+    static class InMemoryLockTemplate extends MongoTemplate {
+
+        private final ConcurrentHashMap<String, String> ownersByLockId = new ConcurrentHashMap<>();
+
+        InMemoryLockTemplate(MongoClient mongoClient) {
+            super(mongoClient, "benchmark");
+        }
+
+        @Override
+        public <T> T insert(T objectToSave) {
+            TopologyLockDocument lock = (TopologyLockDocument) objectToSave;
+            if (ownersByLockId.putIfAbsent(lock.getId(), lock.getOwner()) != null) {
+                throw new DuplicateKeyException("Lock already held: " + lock.getId());
+            }
+            return objectToSave;
+        }
+
+        @Override
+        public DeleteResult remove(Query query, Class<?> entityClass) {
+            // Matches the { _id: { $in: [...] }, owner: ... } query of DistributedLockService.releaseLocks
+            Document queryObject = query.getQueryObject();
+            Collection<?> lockIds = (Collection<?>) queryObject.get("_id", Document.class).get("$in");
+            Object owner = queryObject.get("owner");
+            long deletedCount = lockIds.stream()
+                    .filter(lockId -> ownersByLockId.remove(lockId, owner))
+                    .count();
+            return DeleteResult.acknowledged(deletedCount);
+        }
+    }
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        mongoClient = MongoClients.create();
+        lockService = new DistributedLockService(new InMemoryLockTemplate(mongoClient),
+                Duration.ofSeconds(10), Duration.ofMillis(50), new SimpleMeterRegistry());
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        mongoClient.close();
+    }
+
+    private String acquireHoldRelease() {
+        String lockToken = lockService.acquireLocks(GLOBAL_LOCK);
+        if (lockToken == null) {
+            throw new IllegalStateException("The lock wasn't acquired within the wait timeout");
+        }
+        Blackhole.consumeCPU(holdTokens);
+        lockService.releaseLocks(GLOBAL_LOCK, lockToken);
+        return lockToken;
+    }
+
+    @Benchmark
+    @Threads(1)
+    public String acquireRelease_1Thread() {
+        return acquireHoldRelease();
+    }
+
+    @Benchmark
+    @Threads(2)
+    public String acquireRelease_2Threads() {
+        return acquireHoldRelease();
+    }
+
+    @Benchmark
+    @Threads(4)
+    public String acquireRelease_4Threads() {
+        return acquireHoldRelease();
+    }
+
+    @Benchmark
+    @Threads(8)
+    public String acquireRelease_8Threads() {
+        return acquireHoldRelease();
+    }
+
+    @Benchmark
+    @Threads(Threads.MAX)
+    public String acquireRelease_allCores() {
+        return acquireHoldRelease();
+    }
+}
@@ -0,0 +1,95 @@
+package com.alesmontaldo.network_controller.user_interface.configuration;
+
+import com.alesmontaldo.network_controller.benchmark.TopologyGenerator;
+import com.alesmontaldo.network_controller.codegen.types.*;
+import graphql.schema.GraphQLObjectType;
+import graphql.schema.GraphQLSchema;
+import graphql.schema.idl.SchemaParser;
+import graphql.schema.idl.UnExecutableSchemaGenerator;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+import org.springframework.core.io.ClassPathResource;
+
+/**
+ * Resolution of the object types of the elements of a list result, as done by GraphQL for every element
+ * of a union or interface list such as allDevicesSorted: the chain of instanceof checks followed by a lookup
+ * of the object type by name, against the class to object type registry of {@link ClassTypeResolver}.
+ * Run with the gc profiler (enabled by default in build.gradle): gc.alloc.rate.norm must be 0 for the registry.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Fork(1)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+public class TypeResolutionBenchmark {
+
+    public enum Elements {
+        /** Device views, first in the instanceof chain, as returned by allDevicesSorted */
+        VIEWS,
+        /** Gateways, switches and access points, as returned by addDevices */
+        DEVICES
+    }
+
+    @Param({"VIEWS", "DEVICES"})
+    public Elements elements;
+
+    @Param({"100000"})
+    public int listSize;
+
+    private GraphQLSchema schema;
+    private ClassTypeResolver classTypeResolver;
+    private List<Object> results;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        try (Reader reader = new InputStreamReader(new ClassPathResource("graphql/schema.graphqls").getInputStream(), StandardCharsets.UTF_8)) {
+            schema = UnExecutableSchemaGenerator.makeUnExecutableSchema(new SchemaParser().parse(reader));
+        }
+        classTypeResolver = new ClassTypeResolver(GraphQLConfig.OBJECT_TYPE_NAMES);
+
+        results = new ArrayList<>(listSize);
+        for (Device device : TopologyGenerator.generate(TopologyGenerator.Shape.RANDOM, listSize).devices()) {
+            results.add(elements == Elements.VIEWS ? new DeviceResultView(device.getMacAddress(), device.getDeviceType()) : device);
+        }
+    }
+
+    @Benchmark
+    public void instanceofChain(Blackhole blackhole) {
+        for (Object result : results) {
+            blackhole.consume(resolveByInstanceof(result, schema));
+        }
+    }
+
+    @Benchmark
+    public void classRegistry(Blackhole blackhole) {
+        for (Object result : results) {
+            blackhole.consume(classTypeResolver.resolve(result, schema));
+        }
+    }
+
+    // The type resolvers previously registered in GraphQLConfig, merged into one
+    private static GraphQLObjectType resolveByInstanceof(Object result, GraphQLSchema schema) {
+        if (result instanceof DeviceResultView) {
+            return schema.getObjectType("DeviceResultView");
+        } else if (result instanceof Gateway) {
+            return schema.getObjectType("Gateway");
+        } else if (result instanceof Switch) {
+            return schema.getObjectType("Switch");
+        } else if (result instanceof AccessPoint) {
+            return schema.getObjectType("AccessPoint");
+        } else if (result instanceof ValidationError) {
+            return schema.getObjectType("ValidationError");
+        } else if (result instanceof ServerError) {
+            return schema.getObjectType("ServerError");
+        }
+        return null;
+    }
+}
@@ -0,0 +1,123 @@
+package com.alesmontaldo.network_controller.user_interface.controller;
+
+import com.alesmontaldo.network_controller.ServerApp;
+import com.alesmontaldo.network_controller.benchmark.TopologyGenerator;
+import com.alesmontaldo.network_controller.domain.device.MacAddress;
+import com.alesmontaldo.network_controller.domain.device.persistance.DeviceRepository;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+
+/**
+ * Load test of the GraphQL endpoint with platform threads (the Tomcat pool) and with virtual threads
+ * ({@code spring.threads.virtual.enabled}): every operation sends a burst of concurrent {@code deviceTopology} queries
+ * and waits for all the responses, so the throughput in requests per second is the score times {@code concurrentRequests}.
+ * <p>
+ * The application runs in the benchmark JVM. By default it uses the in-memory profile, where requests don't block:
+ * run it against MongoDB to measure the effect of blocking I/O, e.g. {@code -p profile=default} on the JMH jar.
+ * The peak number of threads and the committed memory are printed at the end of each trial, and carriers
+ * pinned by a virtual thread are reported on the standard output ({@code jdk.tracePinnedThreads}).
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Fork(value = 1, jvmArgsAppend = {"-Xmx2g", "-Djdk.tracePinnedThreads=short"})
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+public class ThreadModelBenchmark {
+
+    private static final String DEVICE_TOPOLOGY_QUERY =
+            "{\"query\":\"query($mac: MacAddress!) { deviceTopology(macAddress: $mac) { ... on JsonResult { data } } }\","
+                    + "\"variables\":{\"mac\":\"%s\"}}";
+
+    @Param({"false", "true"})
+    public boolean virtualThreads;
+
+    @Param({"200", "2000"})
+    public int concurrentRequests;
+
+    @Param({"in-memory"})
+    public String profile;
+
+    private ConfigurableApplicationContext context;
+    private ExecutorService clientExecutor;
+    private HttpClient client;
+    private URI graphQlUri;
+    private List<MacAddress> rootMacs;
+    private int nextRoot;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        context = new SpringApplicationBuilder(ServerApp.class)
+                .profiles(profile)
+                .properties(
+                        "server.port=0",
+                        "spring.threads.virtual.enabled=" + virtualThreads,
+                        "spring.graphql.graphiql.enabled=false",
+                        "logging.level.root=WARN"
+                )
+                .run();
+
+        TopologyGenerator.Topology topology = TopologyGenerator.generate(TopologyGenerator.Shape.FOREST, 10_000);
+        DeviceRepository repository = context.getBean(DeviceRepository.class);
+        if (repository.findById(topology.rootMacs().getFirst()).isEmpty()) {
+            repository.saveAll(topology.devices());
+        }
+        rootMacs = topology.rootMacs();
+
+        int port = context.getEnvironment().getRequiredProperty("local.server.port", Integer.class);
+        graphQlUri = URI.create("http://localhost:" + port + "/graphql");
+        // The clients always use virtual threads, so that only the server side thread model changes
+        clientExecutor = Executors.newVirtualThreadPerTaskExecutor();
+        client = HttpClient.newBuilder().executor(clientExecutor).version(HttpClient.Version.HTTP_1_1).build();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        MemoryMXBean memory = ManagementFactory.getMemoryMXBean();
+        System.out.printf("%npeak threads: %d, committed heap: %d MB, committed non-heap: %d MB%n",
+                ManagementFactory.getThreadMXBean().getPeakThreadCount(),
+                memory.getHeapMemoryUsage().getCommitted() >> 20,
+                memory.getNonHeapMemoryUsage().getCommitted() >> 20);
+
+        client.close();
+        clientExecutor.close();
+        context.close();
+    }
+
+    @Benchmark
+    public int deviceTopologyBurst() {
+        List<CompletableFuture<HttpResponse<String>>> responses = new ArrayList<>(concurrentRequests);
+        for (int i = 0; i < concurrentRequests; i++) {
+            MacAddress rootMac = rootMacs.get(nextRoot++ % rootMacs.size());
+            HttpRequest request = HttpRequest.newBuilder(graphQlUri)
+                    .header("Content-Type", "application/json")
+                    .POST(HttpRequest.BodyPublishers.ofString(DEVICE_TOPOLOGY_QUERY.formatted(rootMac.getValue())))
+                    .build();
+            responses.add(client.sendAsync(request, HttpResponse.BodyHandlers.ofString()));
+        }
+
+        int failures = 0;
+        for (CompletableFuture<HttpResponse<String>> response : responses) {
+            if (response.join().statusCode() != 200) {
+                failures++;
+            }
+        }
+        if (failures > 0) {
+            throw new IllegalStateException(failures + " requests failed");
+        }
+        return failures;
+    }
+}
@@ -5,29 +5,43 @@ import static com.alesmontaldo.network_controller.codegen.types.DeviceType.*;
 import com.alesmontaldo.network_controller.codegen.types.*;
 import com.alesmontaldo.network_controller.domain.device.MacAddress;
 import com.alesmontaldo.network_controller.domain.device.persistance.DeviceRepository;
+import com.alesmontaldo.network_controller.domain.device.persistance.DeviceSortKey;
+import com.alesmontaldo.network_controller.domain.device.persistance.SubtreeFilter;
+import com.alesmontaldo.network_controller.domain.device.persistance.TopologyVisitor;
+import io.micrometer.core.annotation.Timed;
 import jakarta.validation.ValidationException;
+import java.nio.charset.StandardCharsets;
 import java.util.*;
-import java.util.stream.Collectors;
-import org.apache.commons.logging.Log;
-import org.apache.commons.logging.LogFactory;
 import org.jetbrains.annotations.NotNull;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
 
 /**
  * Service for device-related business operations.
  * Focuses on business logic while delegating persistence concerns to the repository.
+ * Each business operation is timed as device.service, tagged with the method name.
  */
 @Service
 public class DeviceService {
 
-    private static final Log log = LogFactory.getLog(DeviceService.class);
+    private static final Logger log = LoggerFactory.getLogger(DeviceService.class);
+
+    static final int MAX_PAGE_SIZE = 1_000;
+    private static final String CURSOR_SEPARATOR = "/";
 
     private final DeviceRepository deviceRepository;
+    private final TopologyCache topologyCache;
 
-    @Autowired
     public DeviceService(DeviceRepository deviceRepository) {
+        this(deviceRepository, new TopologyCache(0));
+    }
+
+    @Autowired
+    public DeviceService(DeviceRepository deviceRepository, TopologyCache topologyCache) {
         this.deviceRepository = deviceRepository;
+        this.topologyCache = topologyCache;
     }
 
     /**
@@ -37,40 +51,113 @@ public class DeviceService {
      * @throws ValidationException could not find device with given id
      * @return The device found
      */
+    @Timed("device.service")
     @NotNull
     public Device getDeviceByMac(MacAddress macAddress) {
-        log.info("Fetching device with mac: " + macAddress);
+        log.atDebug().addKeyValue("mac", macAddress).log("Fetching device {}", macAddress);
         Optional<Device> fromDb = deviceRepository.findById(macAddress);
         if (fromDb.isEmpty()) {
             throw new ValidationException("Device with MAC address: " + macAddress + " cannot be found");
         }
-        log.info("Found device: " + fromDb);
         return fromDb.get();
     }
 
     /**
-     * Retrieves all devices sorted by deviceType.
+     * Retrieves the MAC address and the type of a device, without loading the rest of it.
+     *
+     * @param macAddress The MAC address of the device to retrieve
+     * @throws ValidationException could not find device with given id
+     * @return The view of the device found
+     */
+    @Timed("device.service")
+    @NotNull
+    public DeviceResultView getDeviceView(MacAddress macAddress) {
+        log.atDebug().addKeyValue("mac", macAddress).log("Fetching device view {}", macAddress);
+        return deviceRepository.findViewById(macAddress)
+                .orElseThrow(() -> new ValidationException("Device with MAC address: " + macAddress + " cannot be found"));
+    }
+
+    /**
+     * Retrieves the direct downlink devices of several uplinks at once, with a single read.
+     * Meant for batch loading the downlinks of the devices of a query, one level of the topology at a time.
+     *
+     * @param uplinkMacs The MAC addresses of the uplink devices
+     * @return The downlink devices of each uplink, an empty list for the uplinks without downlinks
+     */
+    @Timed("device.service")
+    public Map<MacAddress, List<Device>> getDownlinks(Collection<MacAddress> uplinkMacs) {
+        Map<MacAddress, List<Device>> downlinksByUplink = new HashMap<>();
+        for (MacAddress uplinkMac : uplinkMacs) {
+            downlinksByUplink.put(uplinkMac, new ArrayList<>());
+        }
+        for (Device downlink : deviceRepository.findDownlinks(uplinkMacs)) {
+            // null when the device has been moved under another uplink meanwhile
+            List<Device> siblings = downlinksByUplink.get(downlink.getUplinkMacAddress());
+            if (siblings != null) {
+                siblings.add(downlink);
+            }
+        }
+        return downlinksByUplink;
+    }
+
+    /**
+     * Retrieves all devices sorted by deviceType, and then by MAC address.
+     * Only the MAC address and the type of the devices are read.
      *
      * @return all devices sorted by deviceType
      */
+    @Timed("device.service")
     public List<DeviceResultView> getAllDevicesSorted() {
-        List<Device> allDevices = deviceRepository.findAll();
+        return deviceRepository.findAllViewsSorted();
+    }
 
-        return allDevices.stream()
-                .sorted((d1, d2) -> {
-                    Map<DeviceType, Integer> typeOrder = Map.of(
-                            DeviceType.GATEWAY, 0,
-                            DeviceType.SWITCH, 1,
-                            DeviceType.ACCESS_POINT, 2
-                    );
+    /**
+     * Retrieves a page of the devices sorted by deviceType, and then by MAC address.
+     * The page is read directly from the repository in sort order, so its cost depends on the page size only.
+     *
+     * @param first The maximum number of devices of the page, between 1 and {@value #MAX_PAGE_SIZE}
+     * @param after The cursor of the last device of the previous page, null for the first page
+     * @param deviceType The type of the devices to retrieve, null for all the types
+     * @throws ValidationException if the page size or the cursor are not valid
+     * @return The page of devices, with one cursor for each device
+     */
+    @Timed("device.service")
+    public DeviceConnection getDevicesPage(int first, String after, DeviceType deviceType) {
+        if (first < 1 || first > MAX_PAGE_SIZE) {
+            throw new ValidationException("The page size must be between 1 and " + MAX_PAGE_SIZE);
+        }
+        DeviceSortKey afterKey = after == null ? null : decodeCursor(after);
+
+        // One more device than requested tells whether there is a next page
+        List<Device> devices = deviceRepository.findSortedPage(deviceType, afterKey, first + 1);
+        boolean hasNextPage = devices.size() > first;
+        List<Device> page = hasNextPage ? devices.subList(0, first) : devices;
+
+        List<DeviceEdge> edges = new ArrayList<>(page.size());
+        for (Device device : page) {
+            String cursor = encodeCursor(DeviceSortKey.of(device));
+            edges.add(new DeviceEdge(cursor, new DeviceResultView(device.getMacAddress(), device.getDeviceType())));
+        }
+        String endCursor = edges.isEmpty() ? null : edges.getLast().getCursor();
+        return new DeviceConnection(edges, new PageInfo(hasNextPage, endCursor));
+    }
+
+    /**
+     * Cursors are opaque to clients: the sort key of the device, encoded in base64.
+     */
+    private static String encodeCursor(DeviceSortKey key) {
+        String plain = key.typeOrder() + CURSOR_SEPARATOR + key.macAddress().getValue();
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(plain.getBytes(StandardCharsets.US_ASCII));
+    }
 
-                    return Integer.compare(
-                            typeOrder.getOrDefault(d1.getDeviceType(), Integer.MAX_VALUE),
-                            typeOrder.getOrDefault(d2.getDeviceType(), Integer.MAX_VALUE)
-                    );
-                })
-                .map(device -> new DeviceResultView(device.getMacAddress(), device.getDeviceType()))
-                .collect(Collectors.toList());
+    private static DeviceSortKey decodeCursor(String cursor) {
+        try {
+            String plain = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.US_ASCII);
+            int separator = plain.indexOf(CURSOR_SEPARATOR);
+            return new DeviceSortKey(Integer.parseInt(plain.substring(0, separator)), new MacAddress(plain.substring(separator + 1)));
+        } catch (IllegalArgumentException | IndexOutOfBoundsException e) {
+            throw new ValidationException("Invalid cursor: " + cursor);
+        }
     }
 
     /**
@@ -85,34 +172,117 @@ public class DeviceService {
      * @throws ValidationException if adding the device would create a cycle or if device could not be found
      * @return The newly created device
      */
+    @Timed("device.service")
     public Device addDevice(MacAddress mac, MacAddress uplinkMac, DeviceType deviceType) {
-        log.info("Trying to add new device with mac:" + mac + ", uplinkMac: " + uplinkMac + " and deviceType: " + deviceType);
+        log.atInfo().addKeyValue("mac", mac).addKeyValue("uplinkMac", uplinkMac).addKeyValue("deviceType", deviceType)
+                .log("Adding {} device {} with uplink {}", deviceType, mac, uplinkMac);
+        Device device = newDevice(mac, uplinkMac, deviceType);
+
+        if (!topologyCache.isEnabled()) {
+            return deviceRepository.save(device);
+        }
+
+        // The trees the device leaves, if it already exists, and the trees it joins
+        Set<MacAddress> affectedMacs = new HashSet<>(deviceRepository.findAncestors(mac));
+        Device savedDevice = deviceRepository.save(device);
+        affectedMacs.addAll(deviceRepository.findAncestors(mac));
+        affectedMacs.add(mac);
+        topologyCache.invalidate(affectedMacs);
+        return savedDevice;
+    }
+
+    /**
+     * Adds a batch of new devices to the network.
+     * The whole batch is validated and saved at once: devices can uplink to other devices of the batch,
+     * in any order, and either all the devices are added or none of them is.
+     *
+     * @param deviceInputs The devices to add
+     * @throws ConcurrentModificationException if unable to acquire a lock
+     * @throws ValidationException if the batch would create a cycle, if a device already exists or if an uplink could not be found
+     * @return The newly created devices
+     */
+    @Timed("device.service")
+    public List<Device> addDevices(List<DeviceInput> deviceInputs) {
+        log.atInfo().addKeyValue("count", deviceInputs.size()).log("Adding a batch of {} devices", deviceInputs.size());
+        if (deviceInputs.isEmpty()) {
+            return List.of();
+        }
+
+        List<Device> newDevices = new ArrayList<>(deviceInputs.size());
+        for (DeviceInput deviceInput : deviceInputs) {
+            newDevices.add(newDevice(deviceInput.getMacAddress(), deviceInput.getUplinkMacAddress(), deviceInput.getDeviceType()));
+        }
+
+        List<Device> savedDevices = deviceRepository.saveAll(newDevices);
+        invalidateUplinkChains(newDevices);
+        return savedDevices;
+    }
 
+    /**
+     * Invalidates the cached trees a batch of new devices was added to:
+     * the ones rooted at the uplinks outside the batch, and at their ancestors.
+     */
+    private void invalidateUplinkChains(List<Device> newDevices) {
+        if (!topologyCache.isEnabled()) {
+            return;
+        }
+
+        Set<MacAddress> batchMacs = new HashSet<>();
+        newDevices.forEach(device -> batchMacs.add(device.getMacAddress()));
+        Set<MacAddress> affectedMacs = new HashSet<>();
+        for (Device device : newDevices) {
+            MacAddress uplinkMac = device.getUplinkMacAddress();
+            if (uplinkMac != null && !batchMacs.contains(uplinkMac) && affectedMacs.add(uplinkMac)) {
+                affectedMacs.addAll(deviceRepository.findAncestors(uplinkMac));
+            }
+        }
+        topologyCache.invalidate(affectedMacs);
+    }
+
+    private Device newDevice(MacAddress mac, MacAddress uplinkMac, DeviceType deviceType) {
         // Basic validation that doesn't require topology-wide consistency
         if (Objects.equals(mac, uplinkMac)) {
             throw new ValidationException("Device MAC cannot be the same as its uplink MAC");
         }
-        
+
         // Create the appropriate device type
-        Device newDevice = switch (deviceType) {
+        return switch (deviceType) {
             case GATEWAY -> new Gateway(mac, uplinkMac, GATEWAY, new ArrayList<>());
             case SWITCH -> new Switch(mac, uplinkMac, SWITCH, new ArrayList<>());
             case ACCESS_POINT -> new AccessPoint(mac, uplinkMac, ACCESS_POINT, new ArrayList<>());
         };
-
-        return deviceRepository.save(newDevice);
     }
 
     /**
-     * Retrieves a device and its entire subtree.
+     * Retrieves a device and its entire subtree, from the topology cache when enabled.
+     * The returned subtree may be shared with other callers and must not be modified.
      *
      * @param rootMac The MAC address of the root device
      * @return The device with its subtree if found
      * @throws ValidationException if device could not be found
      */
+    @Timed("device.service")
     @NotNull
     public Device getSubtree(MacAddress rootMac) {
-        Optional<Device> fromDB = deviceRepository.fetchSubtree(rootMac);
+        return getSubtree(rootMac, SubtreeFilter.NONE);
+    }
+
+    /**
+     * Retrieves a device and the part of its subtree selected by the filter.
+     * Only unrestricted subtrees are served from the topology cache: filtered ones are fetched from the repository,
+     * which applies the filter while reading.
+     *
+     * @param rootMac The MAC address of the root device
+     * @param filter The devices of the subtree to include
+     * @return The device with its filtered subtree if found
+     * @throws ValidationException if device could not be found
+     */
+    @Timed("device.service")
+    @NotNull
+    public Device getSubtree(MacAddress rootMac, SubtreeFilter filter) {
+        Optional<Device> fromDB = filter.isUnrestricted()
+                ? topologyCache.getSubtree(rootMac, deviceRepository::fetchSubtree)
+                : deviceRepository.fetchSubtree(rootMac, filter);
         if (fromDB.isEmpty()) {
             throw new ValidationException("Device with MAC Address: " + rootMac + " was not found");
         } else {
@@ -120,25 +290,72 @@ public class DeviceService {
         }
     }
 
-    @NotNull
-    public List<Object> getFullTopology() {
-        List<Device> allDevices = getAllDevices();
+    /**
+     * @param maxDepth The number of levels below the root to include, null for all the levels
+     * @param deviceTypes The types of the devices to include below the root, null for all the types
+     * @return The corresponding subtree filter
+     * @throws ValidationException if the maximum depth is negative or no device type is given
+     */
+    public static SubtreeFilter subtreeFilter(Integer maxDepth, Collection<DeviceType> deviceTypes) {
+        if (maxDepth != null && maxDepth < 0) {
+            throw new ValidationException("The maximum depth can't be negative");
+        }
+        if (deviceTypes != null && deviceTypes.isEmpty()) {
+            throw new ValidationException("At least one device type must be given");
+        }
+        return new SubtreeFilter(maxDepth, deviceTypes == null ? null : EnumSet.copyOf(deviceTypes));
+    }
+
+    /**
+     * @param filter The devices of the subtree to include
+     * @return true if the subtree would be read from memory, from the topology cache or from the repository
+     */
+    public boolean readsSubtreeFromMemory(SubtreeFilter filter) {
+        return (filter.isUnrestricted() && topologyCache.isEnabled()) || deviceRepository.readsFromMemory();
+    }
+
+    /**
+     * @return true if the whole topology would be read from memory, from the topology cache or from the repository
+     */
+    public boolean readsForestFromMemory() {
+        return topologyCache.isEnabled() || deviceRepository.readsFromMemory();
+    }
 
-        // Find root devices (those with no uplink)
-        List<Device> rootDevices = allDevices.stream()
-                .filter(device -> device.getUplinkMacAddress() == null)
-                .toList();
+    /**
+     * @return true if the devices would be read from memory, from the repository
+     */
+    public boolean readsDevicesFromMemory() {
+        return deviceRepository.readsFromMemory();
+    }
 
-        // Obtain the device topology for each root device
+    /**
+     * Retrieves the whole network topology as a forest of simplified trees.
+     * All the trees are obtained from the topology cache when enabled, otherwise from the repository in a single pass.
+     *
+     * @return One simplified topology tree for each root device
+     */
+    @Timed("device.service")
+    @NotNull
+    public List<Object> getFullTopology() {
         List<Object> forest = new ArrayList<>();
-        for (Device rootDevice : rootDevices) {
-            Device completeSubtree = getSubtree(rootDevice.getMacAddress());
-            forest.add(buildSimplifiedTopology(completeSubtree));
+        for (Device rootDevice : topologyCache.getForest(deviceRepository::fetchForest)) {
+            forest.add(buildSimplifiedTopology(rootDevice));
         }
 
         return forest;
     }
 
+    /**
+     * Visits the whole network topology, one tree after the other, without materializing it.
+     * Meant for large networks, where the topology returned by {@link #getFullTopology()} doesn't fit comfortably in memory.
+     *
+     * @param visitor The visitor receiving the devices in depth-first order
+     */
+    @Timed("device.service")
+    public void visitFullTopology(TopologyVisitor visitor) {
+        deviceRepository.visitForest(visitor);
+    }
+
     /**
      * Builds a simplified topology tree where each node is represented only by its MAC address.
      *
@@ -168,8 +385,4 @@ public class DeviceService {
 
         return result;
     }
-
-    private List<Device> getAllDevices() {
-        return deviceRepository.findAll();
-    }
 }
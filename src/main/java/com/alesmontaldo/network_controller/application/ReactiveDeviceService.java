@@ -0,0 +1,83 @@
+package com.alesmontaldo.network_controller.application;
+
+import com.alesmontaldo.network_controller.codegen.types.DeviceResultView;
+import com.alesmontaldo.network_controller.codegen.types.DeviceType;
+import com.alesmontaldo.network_controller.domain.device.MacAddress;
+import com.alesmontaldo.network_controller.domain.device.persistance.ReactiveDeviceRepository;
+import com.alesmontaldo.network_controller.domain.device.persistance.SubtreeFilter;
+import jakarta.validation.ValidationException;
+import java.util.List;
+import java.util.Map;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.stereotype.Service;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+/**
+ * Reactive variant of the topology reads of {@link DeviceService}.
+ * When a {@link ReactiveDeviceRepository} is available the devices are streamed from it without blocking,
+ * otherwise the reads are delegated to {@link DeviceService}, on the subscribing thread.
+ * Reads that {@link DeviceService} serves from memory, from the topology cache or the topology replica,
+ * are delegated to it as well: a cache miss is then loaded through the blocking repository.
+ */
+@Service
+public class ReactiveDeviceService {
+
+    private final DeviceService deviceService;
+    private final ReactiveDeviceRepository reactiveRepository; // null when not available
+
+    public ReactiveDeviceService(DeviceService deviceService, ObjectProvider<ReactiveDeviceRepository> reactiveRepository) {
+        this.deviceService = deviceService;
+        this.reactiveRepository = reactiveRepository.getIfAvailable();
+    }
+
+    /**
+     * @return All the devices, sorted by deviceType
+     */
+    public Flux<DeviceResultView> getAllDevicesSorted() {
+        if (reactiveRepository == null || deviceService.readsDevicesFromMemory()) {
+            return Flux.defer(() -> Flux.fromIterable(deviceService.getAllDevicesSorted()));
+        }
+        return reactiveRepository.findAllViewsSorted();
+    }
+
+    /**
+     * @param rootMac The MAC address of the root device
+     * @return The simplified topology tree of the device, or a {@link ValidationException} if it could not be found
+     */
+    public Mono<Map<String, Object>> getSubtreeTopology(MacAddress rootMac) {
+        return getSubtreeTopology(rootMac, null, null);
+    }
+
+    /**
+     * @param rootMac The MAC address of the root device
+     * @param maxDepth The number of levels below the root to include, null for all the levels
+     * @param deviceTypes The types of the devices to include below the root, null for all the types
+     * @return The simplified filtered topology tree of the device,
+     * or a {@link ValidationException} if it could not be found or the filter is invalid
+     */
+    public Mono<Map<String, Object>> getSubtreeTopology(MacAddress rootMac, Integer maxDepth, List<DeviceType> deviceTypes) {
+        return Mono.fromCallable(() -> DeviceService.subtreeFilter(maxDepth, deviceTypes))
+                .flatMap(filter -> getSubtreeTopology(rootMac, filter));
+    }
+
+    private Mono<Map<String, Object>> getSubtreeTopology(MacAddress rootMac, SubtreeFilter filter) {
+        if (reactiveRepository == null || deviceService.readsSubtreeFromMemory(filter)) {
+            return Mono.fromCallable(() -> deviceService.buildSimplifiedTopology(deviceService.getSubtree(rootMac, filter)));
+        }
+        return reactiveRepository.fetchSubtree(rootMac, filter)
+                .switchIfEmpty(Mono.error(() -> new ValidationException("Device with MAC Address: " + rootMac + " was not found")))
+                .map(deviceService::buildSimplifiedTopology);
+    }
+
+    /**
+     * @return One simplified topology tree for each root device, emitted one tree at a time
+     */
+    public Flux<Object> getFullTopology() {
+        if (reactiveRepository == null || deviceService.readsForestFromMemory()) {
+            return Flux.defer(() -> Flux.fromIterable(deviceService.getFullTopology()));
+        }
+        return reactiveRepository.fetchForest()
+                .<Object>map(deviceService::buildSimplifiedTopology);
+    }
+}
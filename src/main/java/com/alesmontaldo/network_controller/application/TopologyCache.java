@@ -0,0 +1,235 @@
+package com.alesmontaldo.network_controller.application;
+
+import com.alesmontaldo.network_controller.codegen.types.Device;
+import com.alesmontaldo.network_controller.domain.device.MacAddress;
+import java.util.*;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+/**
+ * Read-through cache of topology trees: subtrees keyed by the MAC address of their root, and the whole forest.
+ * The cache is bounded by the total number of devices held, evicting the least recently used trees first.
+ * <p>
+ * A tree must be invalidated whenever a device is added to it or moved out of it, that is for every device
+ * of the uplink chain of a saved device: see {@link #invalidate(Collection)}.
+ * Cached trees are shared between callers, which must not modify them.
+ * <p>
+ * Modifications made through other nodes sharing the same database are only seen when the MongoDB change stream
+ * listener is enabled, otherwise the cached trees can be stale until they are evicted.
+ */
+public class TopologyCache {
+
+    // Key of the whole forest, distinct from any MAC address
+    private static final Object FOREST_KEY = new Object();
+
+    private record Entry(Object value, long weight) {
+    }
+
+    private final long maxNodes;
+
+    // Entries in access order, guarded by lock
+    private final LinkedHashMap<Object, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+    private final ReentrantLock lock = new ReentrantLock();
+    private long weightedSize = 0; // guarded by lock
+    // Incremented on every invalidation, so that trees loaded before an invalidation are not cached after it
+    private long invalidations = 0; // guarded by lock
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+
+    /**
+     * @param maxNodes The maximum number of devices held by all the cached trees, 0 to disable the cache
+     */
+    public TopologyCache(long maxNodes) {
+        if (maxNodes < 0) {
+            throw new IllegalArgumentException("The maximum number of cached devices can't be negative: " + maxNodes);
+        }
+        this.maxNodes = maxNodes;
+    }
+
+    public boolean isEnabled() {
+        return maxNodes > 0;
+    }
+
+    /**
+     * @param rootMac The MAC address of the root of the subtree
+     * @param loader Loads the subtree on a cache miss
+     * @return The cached subtree, or the loaded one. Missing devices are not cached
+     */
+    public Optional<Device> getSubtree(MacAddress rootMac, Function<MacAddress, Optional<Device>> loader) {
+        if (!isEnabled()) {
+            return loader.apply(rootMac);
+        }
+
+        Device cached = (Device) lookup(rootMac);
+        if (cached != null) {
+            return Optional.of(cached);
+        }
+
+        long invalidationsBeforeLoad = currentInvalidations();
+        Optional<Device> loaded = loader.apply(rootMac);
+        loaded.ifPresent(subtree -> store(rootMac, subtree, countDevices(List.of(subtree)), invalidationsBeforeLoad));
+        return loaded;
+    }
+
+    /**
+     * @param loader Loads the forest on a cache miss
+     * @return The cached forest, or the loaded one
+     */
+    @SuppressWarnings("unchecked")
+    public List<Device> getForest(Supplier<List<Device>> loader) {
+        if (!isEnabled()) {
+            return loader.get();
+        }
+
+        List<Device> cached = (List<Device>) lookup(FOREST_KEY);
+        if (cached != null) {
+            return cached;
+        }
+
+        long invalidationsBeforeLoad = currentInvalidations();
+        List<Device> loaded = loader.get();
+        store(FOREST_KEY, loaded, countDevices(loaded), invalidationsBeforeLoad);
+        return loaded;
+    }
+
+    /**
+     * Invalidates the subtrees rooted at the given devices, and the forest.
+     *
+     * @param macs The MAC addresses of the devices whose subtree changed
+     */
+    public void invalidate(Collection<MacAddress> macs) {
+        if (!isEnabled()) {
+            return;
+        }
+
+        lock.lock();
+        try {
+            invalidations++;
+            remove(FOREST_KEY);
+            for (MacAddress mac : macs) {
+                remove(mac);
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Invalidates all the cached trees.
+     */
+    public void invalidateAll() {
+        if (!isEnabled()) {
+            return;
+        }
+
+        lock.lock();
+        try {
+            invalidations++;
+            entries.clear();
+            weightedSize = 0;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private Object lookup(Object key) {
+        Entry entry;
+        lock.lock();
+        try {
+            entry = entries.get(key);
+        } finally {
+            lock.unlock();
+        }
+
+        if (entry == null) {
+            misses.increment();
+            return null;
+        }
+        hits.increment();
+        return entry.value();
+    }
+
+    private void store(Object key, Object value, long weight, long invalidationsBeforeLoad) {
+        // Trees larger than the whole cache would only evict everything else
+        if (weight > maxNodes) {
+            return;
+        }
+
+        lock.lock();
+        try {
+            if (invalidations != invalidationsBeforeLoad) {
+                return;
+            }
+            remove(key);
+            entries.put(key, new Entry(value, weight));
+            weightedSize += weight;
+
+            Iterator<Entry> leastRecentlyUsed = entries.values().iterator();
+            while (weightedSize > maxNodes && leastRecentlyUsed.hasNext()) {
+                weightedSize -= leastRecentlyUsed.next().weight();
+                leastRecentlyUsed.remove();
+                evictions.increment();
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // Must be called while holding the lock
+    private void remove(Object key) {
+        Entry removed = entries.remove(key);
+        if (removed != null) {
+            weightedSize -= removed.weight();
+        }
+    }
+
+    private long currentInvalidations() {
+        lock.lock();
+        try {
+            return invalidations;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private static long countDevices(List<Device> roots) {
+        long count = 0;
+        Deque<Device> pending = new ArrayDeque<>(roots);
+        while (!pending.isEmpty()) {
+            Device device = pending.pop();
+            count++;
+            if (device.getDownlinkDevices() != null) {
+                pending.addAll(device.getDownlinkDevices());
+            }
+        }
+        return count;
+    }
+
+    public long getHits() {
+        return hits.sum();
+    }
+
+    public long getMisses() {
+        return misses.sum();
+    }
+
+    public long getEvictions() {
+        return evictions.sum();
+    }
+
+    /**
+     * @return The number of devices held by all the cached trees
+     */
+    public long getWeightedSize() {
+        lock.lock();
+        try {
+            return weightedSize;
+        } finally {
+            lock.unlock();
+        }
+    }
+}
@@ -2,57 +2,155 @@ package com.alesmontaldo.network_controller.domain.device;
 
 import com.fasterxml.jackson.databind.annotation.JsonDeserialize;
 import com.fasterxml.jackson.databind.annotation.JsonSerialize;
-import java.util.Objects;
-import java.util.regex.Pattern;
 
 @JsonSerialize(using = MacAddressJsonConverter.MacAddressSerializer.class)
 @JsonDeserialize(using = MacAddressJsonConverter.MacAddressDeserializer.class)
 public class MacAddress {
-    private final String value;
+
+    private static final int MAC_LENGTH = 17;
+    private static final int OCTETS = 6;
+    private static final long VALUE_MASK = 0xFFFF_FFFF_FFFFL;
+    private static final int SEPARATORS_SHIFT = 48;
+    private static final char[] HEX_DIGITS = "0123456789ABCDEF".toCharArray();
+
+    /**
+     * The 48 bits of the address in the low bits, followed by one bit for each of the
+     * 5 separators (set for a hyphen, clear for a colon), so that the textual form can be rebuilt as given.
+     */
+    private final long bits;
+
+    // Canonical textual form, formatted on demand
+    private String value;
 
     /**
-     * Regular expression pattern for validating MAC addresses.
-     * Explanation:
-     * ^                 - Start of the string
-     * ([0-9A-Fa-f]{2}  - Two hexadecimal characters (0-9, A-F, a-f)
-     * [:-])            - Followed by either a colon or hyphen separator
-     * {5}              - The above pattern repeats exactly 5 times
-     * ([0-9A-Fa-f]{2}) - Followed by two more hexadecimal characters
-     * $                - End of the string
-     * 
-     * This validates formats like:
+     * Parses a MAC address made of 6 groups of two hexadecimal characters (0-9, A-F, a-f),
+     * separated by either a colon or a hyphen.
+     *
+     * This accepts formats like:
      * - 01:23:45:67:89:AB
      * - 01-23-45-67-89-ab
      */
-    private static final Pattern MAC_PATTERN =
-            Pattern.compile("^([0-9A-Fa-f]{2}[:-]){5}([0-9A-Fa-f]{2})$");
-
     public MacAddress(String macAddress) {
-        if (macAddress == null || !MAC_PATTERN.matcher(macAddress).matches()) {
-            throw new IllegalArgumentException("Invalid MAC address: " + macAddress);
+        this.bits = parse(macAddress);
+    }
+
+    MacAddress(long bits) {
+        this.bits = bits;
+    }
+
+    /**
+     * @param address The 48 bits of a MAC address, in the lowest bits of the value
+     * @return The MAC address, represented with colon separators
+     */
+    public static MacAddress of(long address) {
+        if ((address & ~VALUE_MASK) != 0) {
+            throw new IllegalArgumentException("Invalid MAC address: " + Long.toHexString(address));
+        }
+        return new MacAddress(address);
+    }
+
+    /**
+     * Parses a MAC address without regular expressions nor intermediate allocations.
+     *
+     * @return The packed representation of the address, see {@link #bits}
+     * @throws IllegalArgumentException if the given string is not a valid MAC address
+     */
+    static long parse(String macAddress) {
+        if (macAddress == null || macAddress.length() != MAC_LENGTH) {
+            throw invalidMacAddress(macAddress);
+        }
+
+        long address = 0;
+        long separators = 0;
+        for (int octet = 0; octet < OCTETS; octet++) {
+            int position = octet * 3;
+            int high = hexValue(macAddress.charAt(position));
+            int low = hexValue(macAddress.charAt(position + 1));
+            if (high < 0 || low < 0) {
+                throw invalidMacAddress(macAddress);
+            }
+            address = (address << 8) | (high << 4) | low;
+
+            if (octet < OCTETS - 1) {
+                char separator = macAddress.charAt(position + 2);
+                if (separator == '-') {
+                    separators |= 1L << octet;
+                } else if (separator != ':') {
+                    throw invalidMacAddress(macAddress);
+                }
+            }
         }
-        this.value = macAddress.toUpperCase();
+        return address | (separators << SEPARATORS_SHIFT);
+    }
+
+    private static int hexValue(char c) {
+        if (c >= '0' && c <= '9') {
+            return c - '0';
+        } else if (c >= 'A' && c <= 'F') {
+            return c - 'A' + 10;
+        } else if (c >= 'a' && c <= 'f') {
+            return c - 'a' + 10;
+        }
+        return -1;
+    }
+
+    private static IllegalArgumentException invalidMacAddress(String macAddress) {
+        return new IllegalArgumentException("Invalid MAC address: " + macAddress);
+    }
+
+    /**
+     * @return The packed representation of the address, see {@link #bits}
+     */
+    long packedBits() {
+        return bits;
+    }
+
+    /**
+     * @return The 48 bits of the address, in the lowest bits of the value
+     */
+    public long toLong() {
+        return bits & VALUE_MASK;
     }
 
     public String getValue() {
-        return value;
+        String formatted = value;
+        if (formatted == null) {
+            formatted = format();
+            value = formatted;
+        }
+        return formatted;
+    }
+
+    private String format() {
+        char[] chars = new char[MAC_LENGTH];
+        for (int octet = 0; octet < OCTETS; octet++) {
+            int position = octet * 3;
+            int octetValue = (int) (bits >>> (8 * (OCTETS - 1 - octet))) & 0xFF;
+            chars[position] = HEX_DIGITS[octetValue >>> 4];
+            chars[position + 1] = HEX_DIGITS[octetValue & 0xF];
+            if (octet < OCTETS - 1) {
+                boolean hyphen = ((bits >>> (SEPARATORS_SHIFT + octet)) & 1) == 1;
+                chars[position + 2] = hyphen ? '-' : ':';
+            }
+        }
+        return new String(chars);
     }
 
     @Override
     public String toString() {
-        return value;
+        return getValue();
     }
-    
+
     @Override
     public boolean equals(Object o) {
         if (this == o) return true;
         if (o == null || getClass() != o.getClass()) return false;
         MacAddress that = (MacAddress) o;
-        return Objects.equals(value, that.value);
+        return bits == that.bits;
     }
 
     @Override
     public int hashCode() {
-        return Objects.hash(value);
+        return Long.hashCode(bits);
     }
 }
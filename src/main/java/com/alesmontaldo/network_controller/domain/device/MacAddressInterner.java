@@ -0,0 +1,123 @@
+package com.alesmontaldo.network_controller.domain.device;
+
+import java.lang.ref.WeakReference;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Bounded, weak-valued pool of {@link MacAddress} instances.
+ * Large topology reads contain the same MAC address many times (e.g. the uplink of every child of a device):
+ * interning them makes all the occurrences share a single instance.
+ * <p>
+ * The pool is a fixed size table indexed by the hash of the address, each slot holding a weak reference
+ * to the last address interned there. It never grows, it never holds addresses that are not referenced
+ * elsewhere, and lookups are lock-free. Races between concurrent lookups can only cause extra misses.
+ * A pool with capacity 0 is disabled and always creates new instances.
+ */
+public final class MacAddressInterner {
+
+    // The largest power of two an int can hold
+    static final int MAX_CAPACITY = 1 << 30;
+
+    private static final MacAddressInterner DISABLED = new MacAddressInterner(0);
+
+    // Static because the converters using it are not all Spring beans (Jackson deserializer, GraphQL scalar)
+    private static volatile MacAddressInterner shared = DISABLED;
+
+    private final AtomicReferenceArray<WeakReference<MacAddress>> slots;
+    private final int mask;
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+
+    /**
+     * @param capacity The number of slots of the pool, rounded up to a power of two, up to {@value #MAX_CAPACITY};
+     *                 0 disables the pool
+     */
+    public MacAddressInterner(int capacity) {
+        if (capacity < 0) {
+            throw new IllegalArgumentException("Capacity must not be negative: " + capacity);
+        }
+        if (capacity > MAX_CAPACITY) {
+            throw new IllegalArgumentException("Capacity must not exceed " + MAX_CAPACITY + ": " + capacity);
+        }
+        int slotsCount = capacity <= 1 ? capacity : Integer.highestOneBit(capacity - 1) << 1;
+        this.slots = new AtomicReferenceArray<>(slotsCount);
+        this.mask = slotsCount - 1;
+    }
+
+    /**
+     * The pool is installed by the application context on startup and removed on shutdown:
+     * until then, and outside of it (unit tests, benchmarks), a disabled pool is used.
+     *
+     * @return The pool used by the converters of MAC addresses (Mongo, GraphQL and JSON)
+     */
+    public static MacAddressInterner shared() {
+        return shared;
+    }
+
+    /**
+     * Installs the pool used by the converters. The last installed pool is the one used by every application context
+     * of the JVM: code installing a pool must {@link #resetShared()} when done with it.
+     */
+    public static void setShared(MacAddressInterner interner) {
+        shared = interner;
+    }
+
+    /**
+     * Restores the disabled pool used by the converters when none is installed.
+     */
+    public static void resetShared() {
+        shared = DISABLED;
+    }
+
+    public boolean isEnabled() {
+        return slots.length() > 0;
+    }
+
+    /**
+     * Parses the given MAC address, returning the pooled instance if there is one.
+     *
+     * @throws IllegalArgumentException if the given string is not a valid MAC address
+     */
+    public MacAddress intern(String macAddress) {
+        long bits = MacAddress.parse(macAddress);
+        if (!isEnabled()) {
+            return new MacAddress(bits);
+        }
+
+        int slot = slotOf(bits);
+        WeakReference<MacAddress> reference = slots.get(slot);
+        MacAddress pooled = reference == null ? null : reference.get();
+        if (pooled != null && pooled.packedBits() == bits) {
+            hits.increment();
+            return pooled;
+        }
+
+        misses.increment();
+        MacAddress created = new MacAddress(bits);
+        slots.set(slot, new WeakReference<>(created));
+        return created;
+    }
+
+    private int slotOf(long bits) {
+        // Fibonacci hashing, to spread addresses of the same vendor prefix over the whole table
+        return (int) ((bits * 0x9E3779B97F4A7C15L) >>> 32) & mask;
+    }
+
+    public long getHits() {
+        return hits.sum();
+    }
+
+    public long getMisses() {
+        return misses.sum();
+    }
+
+    /**
+     * @return The ratio of lookups served by a pooled instance, 0 if there were no lookups
+     */
+    public double getHitRate() {
+        long hitsCount = getHits();
+        long total = hitsCount + getMisses();
+        return total == 0 ? 0 : (double) hitsCount / total;
+    }
+}
@@ -37,7 +37,7 @@ public class MacAddressJsonConverter {
             if (value == null || value.isEmpty()) {
                 return null;
             }
-            return new MacAddress(value);
+            return MacAddressInterner.shared().intern(value);
         }
     }
 }
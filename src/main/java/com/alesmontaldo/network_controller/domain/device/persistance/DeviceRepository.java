@@ -1,8 +1,12 @@
 package com.alesmontaldo.network_controller.domain.device.persistance;
 
 import com.alesmontaldo.network_controller.codegen.types.Device;
+import com.alesmontaldo.network_controller.codegen.types.DeviceResultView;
+import com.alesmontaldo.network_controller.codegen.types.DeviceType;
 import com.alesmontaldo.network_controller.domain.device.MacAddress;
 
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
 import jakarta.validation.ValidationException;
 import java.util.*;
 import org.springframework.retry.annotation.Backoff;
@@ -13,7 +17,19 @@ import org.springframework.retry.annotation.Retryable;
  * Defines the contract for device persistence operations regardless of the underlying storage mechanism.
  */
 public abstract class DeviceRepository {
-    
+
+    private final DistributionSummary cycleCheckHops;
+
+    /**
+     * @param meterRegistry The registry of the metrics of the topology validations
+     */
+    protected DeviceRepository(MeterRegistry meterRegistry) {
+        this.cycleCheckHops = DistributionSummary.builder("topology.cycle.check.hops")
+                .description("Uplinks visited to check that a new device doesn't close a cycle in the topology")
+                .baseUnit("hops")
+                .register(meterRegistry);
+    }
+
     /**
      * Finds a device by its MAC address.
      *
@@ -22,14 +38,67 @@ public abstract class DeviceRepository {
      */
     public abstract Optional<Device> findById(MacAddress id);
 
+    /**
+     * Finds the devices with the given MAC addresses.
+     *
+     * @param ids The MAC addresses of the devices to find
+     * @return The devices found, in no particular order
+     */
+    public abstract List<Device> findAllById(Collection<MacAddress> ids);
+
+    /**
+     * Finds the devices directly connected to any of the given uplinks, without their own downlink devices.
+     * Reads a single level of the topology, so a query can resolve as many levels as it needs with one read per level.
+     *
+     * @param uplinkMacs The MAC addresses of the uplink devices
+     * @return The direct downlink devices of the uplinks, in no particular order
+     */
+    public abstract List<Device> findDownlinks(Collection<MacAddress> uplinkMacs);
+
     /**
      * Finds all devices.
-     * It would be better to replace this approach with a pagination method instead.
+     * Prefer {@link #findSortedPage(DeviceType, DeviceSortKey, int)} to read large topologies.
      *
      * @return A list containing all the devices
      */
     public abstract List<Device> findAll();
 
+    /**
+     * Finds the MAC address and the type of a device.
+     * Implementations should only read these two fields, instead of the whole device.
+     *
+     * @param id The MAC address of the device to find
+     * @return An Optional containing the view of the device if found, or empty if not found
+     */
+    public Optional<DeviceResultView> findViewById(MacAddress id) {
+        return findById(id).map(device -> new DeviceResultView(device.getMacAddress(), device.getDeviceType()));
+    }
+
+    /**
+     * Finds the MAC address and the type of all the devices, sorted by type and MAC address (see {@link DeviceSortKey}).
+     * Implementations should only read these two fields, instead of the whole devices.
+     *
+     * @return The views of all the devices, in sort order
+     */
+    public List<DeviceResultView> findAllViewsSorted() {
+        return findAll().stream()
+                .sorted(Comparator.comparing(DeviceSortKey::of))
+                .map(device -> new DeviceResultView(device.getMacAddress(), device.getDeviceType()))
+                .toList();
+    }
+
+    /**
+     * Finds a page of devices sorted by type and MAC address, see {@link DeviceSortKey}.
+     * Implementations should read the page from a structure already sorted by that key,
+     * so that the cost is proportional to the page size and not to the number of devices.
+     *
+     * @param deviceType The type of the devices to find, null for all the types
+     * @param after The key of the last device of the previous page, null for the first page
+     * @param limit The maximum number of devices to return
+     * @return The devices following the given key, in sort order
+     */
+    public abstract List<Device> findSortedPage(DeviceType deviceType, DeviceSortKey after, int limit);
+
     /**
      * Saves a device with topology consistency validation.
      * Implementations should ensure that adding the device won't create cycles in the network topology.
@@ -40,10 +109,30 @@ public abstract class DeviceRepository {
      * @throws ValidationException if adding the device would create a cycle
      */
     @Retryable(
+            label = "DeviceRepository.save",
             retryFor = {ConcurrentModificationException.class, ValidationException.class},
             backoff = @Backoff(delay = 500, maxDelay = 2_000)
     )
     public abstract Device save(Device device);
+
+    /**
+     * Saves a batch of new devices with topology consistency validation.
+     * The whole batch is validated against the existing topology and against itself:
+     * devices can uplink to other devices of the batch, listed in any order.
+     * Either all the devices are saved or none of them is.
+     *
+     * @param devices The new devices to save
+     * @return The saved devices
+     * @throws ConcurrentModificationException if unable to acquire a lock
+     * @throws ValidationException if a device already exists, if an uplink does not exist or if the batch contains a cycle,
+     * without retrying: the batch is validated as a whole, so a retry would fail the same way
+     */
+    @Retryable(
+            label = "DeviceRepository.saveAll",
+            retryFor = {ConcurrentModificationException.class},
+            backoff = @Backoff(delay = 500, maxDelay = 2_000)
+    )
+    public abstract List<Device> saveAll(List<Device> devices);
     
     /**
      * Fetches a device and its entire subtree (all descendants).
@@ -51,7 +140,63 @@ public abstract class DeviceRepository {
      * @param rootMac The MAC address of the root node
      * @return An Optional containing the device with its subtree if found, or empty if not found
      */
-    public abstract Optional<Device> fetchSubtree(MacAddress rootMac);
+    public Optional<Device> fetchSubtree(MacAddress rootMac) {
+        return fetchSubtree(rootMac, SubtreeFilter.NONE);
+    }
+
+    /**
+     * Fetches a device and the part of its subtree selected by the given filter.
+     * Implementations should apply the filter while walking the subtree, so that excluded devices
+     * and the ones below them are never read.
+     *
+     * @param rootMac The MAC address of the root node
+     * @param filter The devices of the subtree to include
+     * @return An Optional containing the device with its filtered subtree if found, or empty if not found
+     */
+    public abstract Optional<Device> fetchSubtree(MacAddress rootMac, SubtreeFilter filter);
+
+    /**
+     * Fetches all the devices organized as a forest: one tree for each root device (a device without uplink).
+     * Implementations should read every device only once and build all the trees in a single pass.
+     *
+     * @return The root devices, each one with its entire subtree
+     */
+    public abstract List<Device> fetchForest();
+
+    /**
+     * Visits all the trees of the topology in depth-first order, one tree after the other.
+     * Unlike {@link #fetchForest()} the topology is not materialized: implementations should hold
+     * at most one tree in memory at a time.
+     *
+     * @param visitor The visitor receiving the devices
+     */
+    public abstract void visitForest(TopologyVisitor visitor);
+
+    /**
+     * @return true if the reads are currently served from memory, without querying the underlying storage
+     */
+    public boolean readsFromMemory() {
+        return false;
+    }
+
+    /**
+     * Finds the uplink chain of a device, by walking it up one device at a time.
+     *
+     * @param mac The MAC address of the device
+     * @return The MAC addresses of the ancestors of the device, from the root of its tree down to its direct uplink.
+     *         Empty if the device is a root or does not exist
+     */
+    public List<MacAddress> findAncestors(MacAddress mac) {
+        Deque<MacAddress> ancestors = new ArrayDeque<>();
+        Set<MacAddress> visitedMacs = new HashSet<>();
+
+        MacAddress currentMac = findById(mac).map(Device::getUplinkMacAddress).orElse(null);
+        while (currentMac != null && visitedMacs.add(currentMac)) {
+            ancestors.addFirst(currentMac);
+            currentMac = findById(currentMac).map(Device::getUplinkMacAddress).orElse(null);
+        }
+        return new ArrayList<>(ancestors);
+    }
 
     protected void validateEventualNewCycle(Device device) {
         MacAddress mac = device.getMacAddress();
@@ -69,6 +214,64 @@ public abstract class DeviceRepository {
         }
     }
 
+    /**
+     * Validates a batch of new devices against the existing topology and against itself.
+     * Since all the devices are new, none of them can be an ancestor of an existing device:
+     * a cycle can only be formed by the uplinks within the batch.
+     * Existing devices and uplinks are looked up with a single query, and every device of the batch
+     * is visited once while looking for cycles.
+     *
+     * @param devices The new devices to validate
+     * @throws ValidationException if the batch can't be added to the topology
+     */
+    protected void validateNewDevicesBatch(List<Device> devices) {
+        Map<MacAddress, Device> batch = new HashMap<>();
+        for (Device device : devices) {
+            if (batch.put(device.getMacAddress(), device) != null) {
+                throw new ValidationException("Device with MAC: " + device.getMacAddress() + " appears more than once in the batch");
+            }
+        }
+
+        Set<MacAddress> externalUplinkMacs = new HashSet<>();
+        for (Device device : devices) {
+            if (device.getUplinkMacAddress() != null && !batch.containsKey(device.getUplinkMacAddress())) {
+                externalUplinkMacs.add(device.getUplinkMacAddress());
+            }
+        }
+        Set<MacAddress> lookupMacs = new HashSet<>(batch.keySet());
+        lookupMacs.addAll(externalUplinkMacs);
+
+        Set<MacAddress> existingMacs = new HashSet<>();
+        for (Device existing : findAllById(lookupMacs)) {
+            existingMacs.add(existing.getMacAddress());
+        }
+
+        for (Device device : devices) {
+            if (existingMacs.contains(device.getMacAddress())) {
+                throw new ValidationException("Device with MAC: " + device.getMacAddress() + " already exists");
+            }
+        }
+        for (MacAddress uplinkMac : externalUplinkMacs) {
+            if (!existingMacs.contains(uplinkMac)) {
+                throw new ValidationException("Uplink device with MAC: " + uplinkMac + " does not exist");
+            }
+        }
+
+        // Devices already known to lead out of the batch (or to a batch root) without cycles
+        Set<MacAddress> acyclicMacs = new HashSet<>();
+        for (Device device : devices) {
+            Set<MacAddress> path = new HashSet<>();
+            MacAddress currentMac = device.getMacAddress();
+            while (currentMac != null && batch.containsKey(currentMac) && !acyclicMacs.contains(currentMac)) {
+                if (!path.add(currentMac)) {
+                    throw new ValidationException("Adding this device would create a circular connection in the network topology");
+                }
+                currentMac = batch.get(currentMac).getUplinkMacAddress();
+            }
+            acyclicMacs.addAll(path);
+        }
+    }
+
     /**
      * Checks if adding a device with the given MAC and uplink MAC would create a cycle in the topology.
      *
@@ -87,6 +290,7 @@ public abstract class DeviceRepository {
         while (currentMac != null) {
             // If we've seen this MAC before, or if it's the same as the new device's MAC, we have a cycle
             if (!visitedMacs.add(currentMac) || currentMac.equals(newDeviceMac)) {
+                recordCycleCheckHops(visitedMacs.size());
                 return true;
             }
 
@@ -101,6 +305,37 @@ public abstract class DeviceRepository {
             currentMac = currentDevice.get().getUplinkMacAddress();
         }
 
+        recordCycleCheckHops(visitedMacs.size());
         return false;
     }
+
+    /**
+     * Records the number of uplinks visited by a cycle check, exposed as the topology.cycle.check.hops distribution.
+     *
+     * @param hops The number of uplinks visited, or the length of the ancestors path read at once
+     */
+    protected void recordCycleCheckHops(int hops) {
+        cycleCheckHops.record(hops);
+    }
+
+    /**
+     * Finds the root of the tree the given device belongs to, by walking up its uplink chain.
+     *
+     * @param mac The MAC of the device
+     * @return The MAC of the root of the device's tree, or the given MAC if the device does not exist
+     */
+    protected MacAddress findRootMac(MacAddress mac) {
+        MacAddress rootMac = mac;
+        Set<MacAddress> visitedMacs = new HashSet<>();
+
+        Optional<Device> currentDevice = findById(mac);
+        while (currentDevice.isPresent()
+                && currentDevice.get().getUplinkMacAddress() != null
+                && visitedMacs.add(rootMac)) {
+            rootMac = currentDevice.get().getUplinkMacAddress();
+            currentDevice = findById(rootMac);
+        }
+
+        return rootMac;
+    }
 }
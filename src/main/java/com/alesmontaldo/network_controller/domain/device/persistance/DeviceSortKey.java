@@ -0,0 +1,48 @@
+package com.alesmontaldo.network_controller.domain.device.persistance;
+
+import com.alesmontaldo.network_controller.codegen.types.Device;
+import com.alesmontaldo.network_controller.codegen.types.DeviceType;
+import com.alesmontaldo.network_controller.domain.device.MacAddress;
+import java.util.Comparator;
+
+/**
+ * Position of a device in the devices sorted by type (gateways, then switches, then access points)
+ * and then by MAC address, compared as stored in MongoDB.
+ * Used to fetch the devices sorted page by page: a page starts right after the key of the last device of the previous one.
+ *
+ * @param typeOrder The order of the device type, see {@link #orderOf(DeviceType)}
+ * @param macAddress The MAC address of the device, null to position before every device of the type
+ */
+public record DeviceSortKey(int typeOrder, MacAddress macAddress) implements Comparable<DeviceSortKey> {
+
+    private static final Comparator<DeviceSortKey> ORDER = Comparator
+            .<DeviceSortKey>comparingInt(DeviceSortKey::typeOrder)
+            .thenComparing(DeviceSortKey::macAddress, Comparator.nullsFirst(Comparator.comparing(MacAddress::getValue)));
+
+    public static DeviceSortKey of(Device device) {
+        return new DeviceSortKey(orderOf(device.getDeviceType()), device.getMacAddress());
+    }
+
+    /**
+     * @return The key positioned before every device of the given type
+     */
+    public static DeviceSortKey first(DeviceType deviceType) {
+        return new DeviceSortKey(orderOf(deviceType), null);
+    }
+
+    /**
+     * @return The position of the given type in the sort order
+     */
+    public static int orderOf(DeviceType deviceType) {
+        return switch (deviceType) {
+            case GATEWAY -> 0;
+            case SWITCH -> 1;
+            case ACCESS_POINT -> 2;
+        };
+    }
+
+    @Override
+    public int compareTo(DeviceSortKey other) {
+        return ORDER.compare(this, other);
+    }
+}
@@ -0,0 +1,34 @@
+package com.alesmontaldo.network_controller.domain.device.persistance;
+
+import com.alesmontaldo.network_controller.codegen.types.Device;
+import com.alesmontaldo.network_controller.codegen.types.DeviceResultView;
+import com.alesmontaldo.network_controller.domain.device.MacAddress;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+/**
+ * Non-blocking read operations of the topology.
+ * Results are emitted as they are read from the storage, with backpressure, instead of being collected first.
+ * Modifications keep going through {@link DeviceRepository}, which holds the topology locks.
+ */
+public interface ReactiveDeviceRepository {
+
+    /**
+     * Implementations should only read the MAC address and the type of the devices.
+     *
+     * @return The views of all the devices, sorted by type and MAC address (see {@link DeviceSortKey})
+     */
+    Flux<DeviceResultView> findAllViewsSorted();
+
+    /**
+     * @param rootMac The MAC address of the root device
+     * @param filter The devices of the subtree to include
+     * @return The device with its filtered subtree, or empty if not found
+     */
+    Mono<Device> fetchSubtree(MacAddress rootMac, SubtreeFilter filter);
+
+    /**
+     * @return The root devices, each one with its entire subtree, emitted one tree at a time
+     */
+    Flux<Device> fetchForest();
+}
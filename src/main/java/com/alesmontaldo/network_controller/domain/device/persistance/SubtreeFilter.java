@@ -0,0 +1,37 @@
+package com.alesmontaldo.network_controller.domain.device.persistance;
+
+import com.alesmontaldo.network_controller.codegen.types.DeviceType;
+import java.util.Set;
+
+/**
+ * Restricts the part of a subtree to fetch. The root of the subtree is always included.
+ * Below it, a device is included when it's within the maximum depth and its type is one of the given types:
+ * the devices below an excluded device are excluded as well, since they can't be reached from the root.
+ *
+ * @param maxDepth The number of levels below the root to include, null for all the levels
+ * @param deviceTypes The types of the devices to include below the root, null for all the types
+ */
+public record SubtreeFilter(Integer maxDepth, Set<DeviceType> deviceTypes) {
+
+    public static final SubtreeFilter NONE = new SubtreeFilter(null, null);
+
+    public SubtreeFilter {
+        if (maxDepth != null && maxDepth < 0) {
+            throw new IllegalArgumentException("The maximum depth can't be negative: " + maxDepth);
+        }
+        deviceTypes = deviceTypes == null ? null : Set.copyOf(deviceTypes);
+    }
+
+    public boolean isUnrestricted() {
+        return maxDepth == null && deviceTypes == null;
+    }
+
+    /**
+     * @param depth The depth of a device below the root, 1 for its direct downlinks
+     * @param deviceType The type of the device
+     * @return Whether the device is part of the filtered subtree, provided its uplink is
+     */
+    public boolean includes(int depth, DeviceType deviceType) {
+        return (maxDepth == null || depth <= maxDepth) && (deviceTypes == null || deviceTypes.contains(deviceType));
+    }
+}
@@ -0,0 +1,15 @@
+package com.alesmontaldo.network_controller.domain.device.persistance;
+
+import com.alesmontaldo.network_controller.codegen.types.DeviceType;
+import com.alesmontaldo.network_controller.domain.device.MacAddress;
+
+/**
+ * Receives the devices of a topology in depth-first order, without the topology being materialized.
+ * Every device is entered, then its downlink devices are visited, then it is exited.
+ */
+public interface TopologyVisitor {
+
+    void enterDevice(MacAddress macAddress, DeviceType deviceType);
+
+    void exitDevice(MacAddress macAddress);
+}
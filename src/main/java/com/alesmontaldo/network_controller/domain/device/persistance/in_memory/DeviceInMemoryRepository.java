@@ -3,90 +3,329 @@ package com.alesmontaldo.network_controller.domain.device.persistance.in_memory;
 import com.alesmontaldo.network_controller.codegen.types.*;
 import com.alesmontaldo.network_controller.domain.device.MacAddress;
 import com.alesmontaldo.network_controller.domain.device.persistance.DeviceRepository;
-import org.apache.commons.logging.Log;
-import org.apache.commons.logging.LogFactory;
+import com.alesmontaldo.network_controller.domain.device.persistance.DeviceSortKey;
+import com.alesmontaldo.network_controller.domain.device.persistance.SubtreeFilter;
+import com.alesmontaldo.network_controller.domain.device.persistance.TopologyVisitor;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.context.annotation.Profile;
 import org.springframework.stereotype.Repository;
 
 import java.util.*;
 import java.util.concurrent.ConcurrentHashMap;
-import java.util.stream.Collectors;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
 
 /**
  * In-memory implementation of the DeviceRepository interface.
  * Uses thread-safe collections to store devices and provides the same functionality
  * as the MongoDB implementation but without requiring a database.
+ * Next to the devices it keeps an uplink -> downlinks adjacency index, so that subtrees
+ * can be materialized without scanning unrelated devices, and the devices sorted by type and MAC address
+ * so that sorted pages can be read without sorting all the devices.
+ * <p>
+ * New devices are inserted optimistically: they are validated and published with a compare-and-set
+ * ({@link Map#putIfAbsent}) while holding the shared side of a read-write lock, so concurrent insertions
+ * don't wait for each other. A new device has no downlinks, so it can't close a cycle that its validation
+ * didn't see. Moving an existing device and saving a batch take the exclusive side of the lock,
+ * since their validation must not be invalidated by concurrent modifications.
  */
 @Repository
 @Profile("in-memory")
 public class DeviceInMemoryRepository extends DeviceRepository {
 
-    private static final Log log = LogFactory.getLog(DeviceInMemoryRepository.class);
+    private static final Logger log = LoggerFactory.getLogger(DeviceInMemoryRepository.class);
     
     // Made package-private for testing.
     final Map<MacAddress, Device> devices = new ConcurrentHashMap<>();
-    private final Object lockObject = new Object();
+    // Adjacency index: uplink MAC -> MACs of its direct downlink devices.
+    // Made package-private for testing.
+    final Map<MacAddress, Set<MacAddress>> downlinks = new ConcurrentHashMap<>();
+    // Devices sorted by type and MAC address, to read sorted pages without sorting all the devices.
+    // Made package-private for testing.
+    final NavigableMap<DeviceSortKey, Device> sortedDevices = new ConcurrentSkipListMap<>();
+    // Shared by the insertions of new devices, exclusive for the modifications of existing devices and batches
+    private final ReadWriteLock topologyLock = new ReentrantReadWriteLock();
+
+    public DeviceInMemoryRepository() {
+        this(new SimpleMeterRegistry());
+    }
+
+    @Autowired
+    public DeviceInMemoryRepository(MeterRegistry meterRegistry) {
+        super(meterRegistry);
+    }
 
     @Override
     public Optional<Device> findById(MacAddress id) {
         return Optional.ofNullable(devices.get(id));
     }
 
+    @Override
+    public List<Device> findAllById(Collection<MacAddress> ids) {
+        List<Device> found = new ArrayList<>();
+        for (MacAddress id : ids) {
+            Device device = devices.get(id);
+            if (device != null) {
+                found.add(device);
+            }
+        }
+        return found;
+    }
+
+    @Override
+    public List<Device> findDownlinks(Collection<MacAddress> uplinkMacs) {
+        List<Device> found = new ArrayList<>();
+        for (MacAddress uplinkMac : uplinkMacs) {
+            for (MacAddress downlinkMac : downlinks.getOrDefault(uplinkMac, Set.of())) {
+                Device device = devices.get(downlinkMac);
+                if (device != null) {
+                    found.add(device);
+                }
+            }
+        }
+        return found;
+    }
+
     @Override
     public List<Device> findAll() {
         return devices.values().stream().toList();
     }
 
+    /**
+     * Reads the sorted index in order, without sorting.
+     */
+    @Override
+    public List<DeviceResultView> findAllViewsSorted() {
+        List<DeviceResultView> views = new ArrayList<>(sortedDevices.size());
+        for (Device device : sortedDevices.values()) {
+            views.add(new DeviceResultView(device.getMacAddress(), device.getDeviceType()));
+        }
+        return views;
+    }
+
+    /**
+     * Skips to the first key of the page in the sorted index, then reads the page in order.
+     */
+    @Override
+    public List<Device> findSortedPage(DeviceType deviceType, DeviceSortKey after, int limit) {
+        NavigableMap<DeviceSortKey, Device> following = sortedDevices;
+        if (after != null) {
+            following = following.tailMap(after, false);
+        }
+        if (deviceType != null) {
+            DeviceSortKey first = DeviceSortKey.first(deviceType);
+            if (after == null || after.compareTo(first) < 0) {
+                following = following.tailMap(first, true);
+            }
+        }
+
+        List<Device> page = new ArrayList<>(Math.min(limit, 1_024));
+        for (Device device : following.values()) {
+            if (page.size() == limit || (deviceType != null && device.getDeviceType() != deviceType)) {
+                break;
+            }
+            page.add(device);
+        }
+        return page;
+    }
+
     @Override
     public Device save(Device device) {
-        synchronized(lockObject) {
-            log.info("Validating device addition for an eventual new cycle for device: " + device);
+        // Logged before taking the lock: nothing is logged while holding it
+        log.atDebug().addKeyValue("mac", device.getMacAddress()).addKeyValue("uplinkMac", device.getUplinkMacAddress())
+                .log("Saving device {} with uplink {}", device.getMacAddress(), device.getUplinkMacAddress());
+        if (!devices.containsKey(device.getMacAddress())) {
+            Device savedDevice = insertNewDevice(device);
+            if (savedDevice != null) {
+                return savedDevice;
+            }
+            // Inserted concurrently by someone else: it's now a modification of an existing device
+        }
+
+        topologyLock.writeLock().lock();
+        try {
             validateEventualNewCycle(device);
-            
-            log.info("Adding new device: " + device);
-            // Create a deep copy to avoid reference issues
+            return store(device);
+        } finally {
+            topologyLock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Validates and inserts a device that doesn't exist yet, concurrently with the other insertions.
+     *
+     * @return The stored copy, or null if a device with the same MAC address was inserted in the meantime
+     */
+    private Device insertNewDevice(Device device) {
+        topologyLock.readLock().lock();
+        try {
+            validateEventualNewCycle(device);
+
             Device savedDevice = cloneDevice(device);
-            devices.put(device.getMacAddress(), savedDevice);
+            if (devices.putIfAbsent(device.getMacAddress(), savedDevice) != null) {
+                return null;
+            }
+            updateDownlinksIndex(null, savedDevice);
+            sortedDevices.put(DeviceSortKey.of(savedDevice), savedDevice);
             return savedDevice;
+        } finally {
+            topologyLock.readLock().unlock();
         }
     }
 
     @Override
-    public Optional<Device> fetchSubtree(MacAddress rootMac) {
+    public List<Device> saveAll(List<Device> newDevices) {
+        log.atDebug().addKeyValue("count", newDevices.size()).log("Saving a batch of {} devices", newDevices.size());
+        topologyLock.writeLock().lock();
+        try {
+            validateNewDevicesBatch(newDevices);
+
+            List<Device> savedDevices = new ArrayList<>(newDevices.size());
+            for (Device device : newDevices) {
+                savedDevices.add(store(device));
+            }
+            return savedDevices;
+        } finally {
+            topologyLock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public Optional<Device> fetchSubtree(MacAddress rootMac, SubtreeFilter filter) {
         // First, check if the root device exists
         Optional<Device> rootDeviceOpt = findById(rootMac);
         if (rootDeviceOpt.isEmpty()) {
             return Optional.empty();
         }
-        
-        Device rootDevice = rootDeviceOpt.get();
 
-        // For this in memory repository we simply check all devices and use them all
-        // to build the device hierarchy
-        List<Device> allDevices = new ArrayList<>(devices.values());
-        return Optional.of(buildDeviceHierarchy(rootDevice, allDevices));
+        return Optional.of(buildDeviceHierarchy(rootDeviceOpt.get(), filter));
     }
-    
+
+    @Override
+    public boolean readsFromMemory() {
+        return true;
+    }
+
+    @Override
+    public List<Device> fetchForest() {
+        return devices.values().stream()
+                .filter(device -> device.getUplinkMacAddress() == null)
+                .map(root -> buildDeviceHierarchy(root, SubtreeFilter.NONE))
+                .toList();
+    }
+
     /**
-     * Recursively builds the device hierarchy by finding and attaching child devices.
-     * Since Device objects are immutable, we create new instances with the proper children.
+     * Walks the adjacency index directly: only the path from the root of the current tree
+     * down to the visited device is kept, so no copy of the topology is created.
+     */
+    @Override
+    public void visitForest(TopologyVisitor visitor) {
+        record Frame(Device device, Iterator<MacAddress> downlinkMacs) {
+        }
+
+        for (Device root : devices.values()) {
+            if (root.getUplinkMacAddress() != null) {
+                continue;
+            }
+
+            Deque<Frame> path = new ArrayDeque<>();
+            visitor.enterDevice(root.getMacAddress(), root.getDeviceType());
+            path.push(new Frame(root, downlinks.getOrDefault(root.getMacAddress(), Set.of()).iterator()));
+            while (!path.isEmpty()) {
+                Frame current = path.peek();
+                if (current.downlinkMacs().hasNext()) {
+                    Device child = devices.get(current.downlinkMacs().next());
+                    if (child != null) {
+                        visitor.enterDevice(child.getMacAddress(), child.getDeviceType());
+                        path.push(new Frame(child, downlinks.getOrDefault(child.getMacAddress(), Set.of()).iterator()));
+                    }
+                } else {
+                    visitor.exitDevice(current.device().getMacAddress());
+                    path.pop();
+                }
+            }
+        }
+    }
+
+    /**
+     * Builds the device hierarchy below the given device by following the adjacency index.
+     * Only the devices of the subtree are visited, so the cost is proportional to the subtree size.
+     * The traversal is iterative to support arbitrarily deep topologies: copies are created with
+     * an empty mutable children list which is filled as their downlinks get visited.
+     * Devices excluded by the filter are skipped together with their downlinks, which are never visited.
      *
-     * @param device The current device to process
-     * @param allDevices List of all devices in the repository
+     * @param root The root device of the subtree
+     * @param filter The devices of the subtree to include
      * @return A new Device instance with the complete hierarchy
      */
-    private Device buildDeviceHierarchy(Device device, List<Device> allDevices) {
-        // Find direct children of this device
-        List<Device> directChildren = allDevices.stream()
-                .filter(child -> child.getUplinkMacAddress() != null && 
-                       child.getUplinkMacAddress().equals(device.getMacAddress()))
-                .map(child -> buildDeviceHierarchy(child, allDevices)) // Recursively build each child's hierarchy
-                .collect(Collectors.toList());
-        
-        // Create a new device instance with the same properties but with the children attached
-        return createDeviceWithChildren(device, directChildren);
+    private Device buildDeviceHierarchy(Device root, SubtreeFilter filter) {
+        record Pending(Device copy, int depth) {
+        }
+
+        Device rootCopy = createDeviceWithChildren(root, new ArrayList<>());
+
+        Deque<Pending> pending = new ArrayDeque<>();
+        pending.push(new Pending(rootCopy, 0));
+        while (!pending.isEmpty()) {
+            Pending parent = pending.pop();
+            int childDepth = parent.depth() + 1;
+            for (MacAddress childMac : downlinks.getOrDefault(parent.copy().getMacAddress(), Set.of())) {
+                Device child = devices.get(childMac);
+                if (child == null || !filter.includes(childDepth, child.getDeviceType())) {
+                    continue;
+                }
+                Device childCopy = createDeviceWithChildren(child, new ArrayList<>());
+                parent.copy().getDownlinkDevices().add(childCopy);
+                pending.push(new Pending(childCopy, childDepth));
+            }
+        }
+
+        return rootCopy;
     }
-    
+
+    /**
+     * Stores a deep copy of the given device, to avoid reference issues, and updates the indexes.
+     *
+     * @param device The device to store
+     * @return The stored copy
+     */
+    private Device store(Device device) {
+        Device savedDevice = cloneDevice(device);
+        Device previous = devices.put(device.getMacAddress(), savedDevice);
+        updateDownlinksIndex(previous, savedDevice);
+        if (previous != null) {
+            sortedDevices.remove(DeviceSortKey.of(previous));
+        }
+        sortedDevices.put(DeviceSortKey.of(savedDevice), savedDevice);
+        return savedDevice;
+    }
+
+    /**
+     * Keeps the adjacency index aligned with a device that has just been stored.
+     * When an existing device changes its uplink it is moved from the old uplink entry to the new one.
+     *
+     * @param previous The device previously stored with the same MAC address, or null
+     * @param current The device just stored
+     */
+    private void updateDownlinksIndex(Device previous, Device current) {
+        MacAddress mac = current.getMacAddress();
+        if (previous != null && previous.getUplinkMacAddress() != null
+                && !previous.getUplinkMacAddress().equals(current.getUplinkMacAddress())) {
+            Set<MacAddress> oldSiblings = downlinks.get(previous.getUplinkMacAddress());
+            if (oldSiblings != null) {
+                oldSiblings.remove(mac);
+            }
+        }
+        if (current.getUplinkMacAddress() != null) {
+            downlinks.computeIfAbsent(current.getUplinkMacAddress(), k -> ConcurrentHashMap.newKeySet()).add(mac);
+        }
+    }
+
     /**
      * Creates a deep copy of a device to avoid reference issues.
      * This is necessary because we're storing objects in memory.
@@ -138,6 +377,8 @@ public class DeviceInMemoryRepository extends DeviceRepository {
      */
     public void clearAllDevices() {
         devices.clear();
+        downlinks.clear();
+        sortedDevices.clear();
     }
     
     /**
@@ -147,7 +388,16 @@ public class DeviceInMemoryRepository extends DeviceRepository {
      * @param mac The MAC address of the device to remove
      */
     public void removeDevice(MacAddress mac) {
-        devices.remove(mac);
+        Device removed = devices.remove(mac);
+        if (removed != null) {
+            sortedDevices.remove(DeviceSortKey.of(removed));
+        }
+        if (removed != null && removed.getUplinkMacAddress() != null) {
+            Set<MacAddress> siblings = downlinks.get(removed.getUplinkMacAddress());
+            if (siblings != null) {
+                siblings.remove(mac);
+            }
+        }
     }
     
     /**
@@ -157,6 +407,6 @@ public class DeviceInMemoryRepository extends DeviceRepository {
      * @param device The device to add
      */
     public void addDeviceForTesting(Device device) {
-        devices.put(device.getMacAddress(), cloneDevice(device));
+        store(device);
     }
 }
@@ -2,6 +2,7 @@ package com.alesmontaldo.network_controller.domain.device.persistance.mongo_db;
 
 import com.alesmontaldo.network_controller.codegen.types.DeviceType;
 import com.alesmontaldo.network_controller.domain.device.MacAddress;
+import com.alesmontaldo.network_controller.domain.device.persistance.DeviceSortKey;
 import java.util.List;
 import org.springframework.data.annotation.Id;
 import org.springframework.data.annotation.Version;
@@ -14,6 +15,13 @@ public abstract class DeviceDocument {
     protected MacAddress macAddress;
     protected MacAddress uplinkMac;
     protected DeviceType deviceType;
+    // Position of the device type in the sort order, see DeviceSortKey.
+    // Stored next to the type so that the compound (deviceTypeOrder, _id) index serves sorted pages.
+    protected Integer deviceTypeOrder;
+
+    // Materialized path of the uplink chain, from the root of the tree down to the direct uplink.
+    // It makes cycle detection and root lookup a single read, regardless of the depth of the device.
+    protected List<MacAddress> ancestors;
 
     // @Transactional operations are not needed in the scope of this
     // demo, but IMHO it's better to include @Version since the beginning
@@ -33,7 +41,7 @@ public abstract class DeviceDocument {
                           DeviceType deviceType) {
         this.macAddress = macAddress;
         this.uplinkMac = uplinkMacAddress;
-        this.deviceType = deviceType;
+        setDeviceType(deviceType);
     }
 
     public MacAddress getMacAddress() {
@@ -52,6 +60,14 @@ public abstract class DeviceDocument {
         this.uplinkMac = uplinkMac;
     }
 
+    public List<MacAddress> getAncestors() {
+        return ancestors;
+    }
+
+    public void setAncestors(List<MacAddress> ancestors) {
+        this.ancestors = ancestors;
+    }
+
     public List<DeviceDocument> getDownlinkDevices() {
         return downlinkDevices;
     }
@@ -66,5 +82,10 @@ public abstract class DeviceDocument {
     
     public void setDeviceType(DeviceType deviceType) {
         this.deviceType = deviceType;
+        this.deviceTypeOrder = deviceType == null ? null : DeviceSortKey.orderOf(deviceType);
+    }
+
+    public Integer getDeviceTypeOrder() {
+        return deviceTypeOrder;
     }
 }
@@ -49,9 +49,12 @@ public abstract class DeviceMapper {
 
     public abstract AccessPoint toAccessPoint(AccessPointDocument document);
     
+    @Mapping(target = "ancestors", ignore = true)
     public abstract GatewayDocument toGatewayDocument(Gateway gateway);
     
+    @Mapping(target = "ancestors", ignore = true)
     public abstract SwitchDocument toSwitchDocument(Switch switchDevice);
     
+    @Mapping(target = "ancestors", ignore = true)
     public abstract AccessPointDocument toAccessPointDocument(AccessPoint accessPoint);
 }
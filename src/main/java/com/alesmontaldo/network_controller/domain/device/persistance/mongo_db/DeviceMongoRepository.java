@@ -1,22 +1,46 @@
 package com.alesmontaldo.network_controller.domain.device.persistance.mongo_db;
 
 import com.alesmontaldo.network_controller.codegen.types.Device;
+import com.alesmontaldo.network_controller.codegen.types.DeviceResultView;
+import com.alesmontaldo.network_controller.codegen.types.DeviceType;
 import com.alesmontaldo.network_controller.domain.device.MacAddress;
 import com.alesmontaldo.network_controller.domain.device.persistance.DeviceRepository;
+import com.alesmontaldo.network_controller.domain.device.persistance.DeviceSortKey;
+import com.alesmontaldo.network_controller.domain.device.persistance.SubtreeFilter;
+import com.alesmontaldo.network_controller.domain.device.persistance.TopologyVisitor;
+import com.alesmontaldo.network_controller.domain.device.persistance.mongo_db.lock.TopologyLockDocument;
 import com.alesmontaldo.network_controller.infrastructure.lock.DistributedLockService;
+import com.alesmontaldo.network_controller.infrastructure.lock.TopologyLockMode;
+import com.mongodb.MongoBulkWriteException;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
 import jakarta.validation.ValidationException;
 import java.util.*;
-import java.util.stream.Collectors;
-import org.apache.commons.logging.Log;
-import org.apache.commons.logging.LogFactory;
+import java.util.stream.Stream;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
 import org.springframework.context.annotation.Profile;
+import org.springframework.context.event.EventListener;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.data.domain.Sort;
 import org.springframework.data.mongodb.core.MongoTemplate;
 import org.springframework.data.mongodb.core.aggregation.Aggregation;
+import org.springframework.data.mongodb.core.aggregation.AggregationExpression;
+import org.springframework.data.mongodb.core.aggregation.AggregationOperation;
+import org.springframework.data.mongodb.core.aggregation.AggregationOptions;
 import org.springframework.data.mongodb.core.aggregation.AggregationResults;
+import org.springframework.data.mongodb.core.aggregation.ArrayOperators;
+import org.springframework.data.mongodb.core.aggregation.ConditionalOperators;
 import org.springframework.data.mongodb.core.aggregation.GraphLookupOperation;
 import org.springframework.data.mongodb.core.aggregation.MatchOperation;
+import org.springframework.data.mongodb.core.aggregation.ProjectionOperation;
 import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
 import org.springframework.stereotype.Repository;
 
 /**
@@ -27,38 +51,193 @@ import org.springframework.stereotype.Repository;
 @Profile("!in-memory")
 public class DeviceMongoRepository extends DeviceRepository {
 
-    private static final Log log = LogFactory.getLog(DeviceMongoRepository.class);
+    private static final Logger log = LoggerFactory.getLogger(DeviceMongoRepository.class);
+
+    // Materialized path of the devices read in depth-first order, see depthFirstAggregation
+    static final String PATH_FIELD = "path";
+    private static final String PATH_SEPARATOR = "/";
 
     private final MongoRepository mongoRepository;
     private final DeviceMapper deviceMapper;
     private final MongoTemplate mongoTemplate;
     private final DistributedLockService lockService;
+    private final TopologyLockMode lockMode;
+    private final TopologyReplica replica;
+    private final TopologyReplicaMode replicaMode;
+    private final Timer subtreeAggregation;
+    private final Timer filteredSubtreeAggregation;
+    private final DistributionSummary subtreeSize;
 
     @Autowired
     public DeviceMongoRepository(MongoRepository mongoRepository,
                                  DeviceMapper deviceMapper,
                                  MongoTemplate mongoTemplate,
-                                 DistributedLockService lockService) {
+                                 DistributedLockService lockService,
+                                 @Value("${network-controller.topology-lock.mode:GLOBAL}") TopologyLockMode lockMode,
+                                 TopologyReplica replica,
+                                 @Value("${network-controller.topology-replica.mode:DISABLED}") TopologyReplicaMode replicaMode,
+                                 MeterRegistry meterRegistry) {
+        super(meterRegistry);
         this.mongoRepository = mongoRepository;
         this.deviceMapper = deviceMapper;
         this.mongoTemplate = mongoTemplate;
         this.lockService = lockService;
+        this.lockMode = lockMode;
+        this.replica = replica;
+        this.replicaMode = replicaMode;
+        this.subtreeAggregation = subtreeAggregationTimer(false, meterRegistry);
+        this.filteredSubtreeAggregation = subtreeAggregationTimer(true, meterRegistry);
+        this.subtreeSize = DistributionSummary.builder("topology.subtree.size")
+                .description("Devices returned by the $graphLookup aggregations fetching a subtree")
+                .baseUnit("devices")
+                .register(meterRegistry);
+    }
+
+    private static Timer subtreeAggregationTimer(boolean filtered, MeterRegistry meterRegistry) {
+        return Timer.builder("topology.subtree.aggregation")
+                .description("Time spent running the $graphLookup aggregations fetching a subtree")
+                .tag("filtered", String.valueOf(filtered))
+                .register(meterRegistry);
     }
 
+    /**
+     * Reads are served by the {@link TopologyReplica} once it's loaded, without querying MongoDB.
+     */
     @Override
     public Optional<Device> findById(MacAddress id) {
+        if (replica.isReady()) {
+            return replica.findById(id);
+        }
         Optional<DeviceDocument> deviceDocument = mongoRepository.findById(id);
         return deviceDocument.map(deviceMapper::toDevice);
     }
 
+    /**
+     * Only used to validate batches: the replica serves it only when no other node can modify the topology.
+     */
+    @Override
+    public List<Device> findAllById(Collection<MacAddress> ids) {
+        TopologySnapshot snapshot = validationSnapshot();
+        if (snapshot != null) {
+            return snapshot.findAllById(ids);
+        }
+        return mongoRepository.findAllById(ids).stream().map(deviceMapper::toDevice).toList();
+    }
+
+    /**
+     * Reads the direct downlinks of all the uplinks with a single {@code $in} query on uplinkMac,
+     * or from the local {@link TopologyReplica} when it's in use.
+     */
+    @Override
+    public List<Device> findDownlinks(Collection<MacAddress> uplinkMacs) {
+        if (replica.isReady()) {
+            return replica.findDownlinks(uplinkMacs);
+        }
+        Query query = Query.query(Criteria.where("uplinkMac").in(uplinkMacs));
+        return mongoTemplate.find(query, DeviceDocument.class).stream().map(deviceMapper::toDevice).toList();
+    }
+
     @Override
     public List<Device> findAll() {
+        if (replica.isReady()) {
+            return List.copyOf(replica.findAll());
+        }
         return mongoRepository.findAll().stream().map(deviceMapper::toDevice).toList();
     }
 
+    /**
+     * Projects the document to its MAC address and type in MongoDB, so only these two fields are sent
+     * and they are read straight into the view, without going through DeviceDocument and DeviceMapper.
+     */
+    @Override
+    public Optional<DeviceResultView> findViewById(MacAddress id) {
+        if (replica.isReady()) {
+            return super.findViewById(id);
+        }
+        Aggregation agg = Aggregation.newAggregation(Aggregation.match(Criteria.where("_id").is(id)), viewProjection());
+        return Optional.ofNullable(mongoTemplate.aggregate(agg, "devices", DeviceResultView.class).getUniqueMappedResult());
+    }
+
+    /**
+     * Walks the compound (deviceTypeOrder, _id) index in order and projects every document
+     * to its MAC address and type, read straight into the views.
+     */
+    @Override
+    public List<DeviceResultView> findAllViewsSorted() {
+        if (replica.isReady()) {
+            return super.findAllViewsSorted();
+        }
+        Aggregation agg = Aggregation.newAggregation(
+                Aggregation.sort(Sort.by(Sort.Direction.ASC, "deviceTypeOrder", "_id")),
+                viewProjection()
+        );
+        try (Stream<DeviceResultView> views = mongoTemplate.aggregateStream(agg, "devices", DeviceResultView.class)) {
+            return views.toList();
+        }
+    }
+
+    /**
+     * Projects the documents to their MAC address and type, read straight into {@link DeviceResultView}.
+     */
+    static ProjectionOperation viewProjection() {
+        return Aggregation.project("deviceType").and("_id").as("macAddress").andExclude("_id");
+    }
+
+    /**
+     * The version of the topology to validate modifications against, when it can be read from the replica.
+     * With {@link TopologyReplicaMode#LOCAL} this node is the only writer and publishes its writes before releasing
+     * the topology locks, so the replica is as up to date as MongoDB. With the change stream the writes
+     * of the other nodes are applied with a delay: validations must read MongoDB.
+     *
+     * @return The current snapshot, or null if validations must read MongoDB
+     */
+    private TopologySnapshot validationSnapshot() {
+        return replicaMode == TopologyReplicaMode.LOCAL && replica.isReady() ? replica.snapshot() : null;
+    }
+
+    /**
+     * Reads the page with a range scan of the compound (deviceTypeOrder, _id) index: the query resumes
+     * right after the given key and stops after the page size, whatever the number of devices.
+     */
+    @Override
+    public List<Device> findSortedPage(DeviceType deviceType, DeviceSortKey after, int limit) {
+        List<Criteria> criteria = new ArrayList<>();
+        if (deviceType != null) {
+            criteria.add(Criteria.where("deviceTypeOrder").is(DeviceSortKey.orderOf(deviceType)));
+        }
+        if (after != null) {
+            criteria.add(new Criteria().orOperator(
+                    Criteria.where("deviceTypeOrder").gt(after.typeOrder()),
+                    Criteria.where("deviceTypeOrder").is(after.typeOrder()).and("_id").gt(after.macAddress())
+            ));
+        }
+
+        Query query = new Query(criteria.isEmpty() ? new Criteria() : new Criteria().andOperator(criteria))
+                .with(Sort.by(Sort.Direction.ASC, "deviceTypeOrder", "_id"))
+                .limit(limit);
+        return mongoTemplate.find(query, DeviceDocument.class).stream().map(deviceMapper::toDevice).toList();
+    }
+
+    /**
+     * Stores the sort order of the type in the documents written before it was part of them,
+     * so that they show up in the sorted pages. Documents already up to date are not touched.
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void backfillDeviceTypeOrder() {
+        for (DeviceType deviceType : DeviceType.values()) {
+            mongoTemplate.updateMulti(
+                    Query.query(Criteria.where("deviceType").is(deviceType).and("deviceTypeOrder").exists(false)),
+                    Update.update("deviceTypeOrder", DeviceSortKey.orderOf(deviceType)),
+                    DeviceDocument.class
+            );
+        }
+    }
+
     /**
      * Saves a device with distributed locking to ensure topology consistency.
      * Validates that adding the device won't create cycles in the network topology.
+     * Depending on the configured {@link TopologyLockMode} either the global topology lock is taken,
+     * or only the locks of the trees affected by the change.
      *
      * @param device The device to save
      * @return The saved device
@@ -67,57 +246,353 @@ public class DeviceMongoRepository extends DeviceRepository {
      */
     @Override
     public Device save(Device device) {
-        String lockToken = lockService.acquireLock();
+        // Logged before taking the locks: nothing is logged while holding them
+        log.atDebug().addKeyValue("mac", device.getMacAddress()).addKeyValue("uplinkMac", device.getUplinkMacAddress())
+                .log("Saving device {} with uplink {}", device.getMacAddress(), device.getUplinkMacAddress());
+        SortedSet<String> lockIds = topologyLockIds(device);
+        String lockToken = lockService.acquireLocks(lockIds);
         if (lockToken == null) {
             throw new ConcurrentModificationException("Network topology is currently being modified. Please try again later.");
         }
         
         try {
-            validateEventualNewCycle(device);
+            // The affected trees were resolved before locking: if they changed in the meantime
+            // the locks we hold are not the right ones
+            if (!lockIds.equals(topologyLockIds(device))) {
+                throw new ConcurrentModificationException("Network topology is currently being modified. Please try again later.");
+            }
+
+            // Validates the uplink and checks for cycles with a single read of the uplink document
+            List<MacAddress> ancestors = ancestorsOfNewDevice(device);
+
+            DeviceDocument deviceDocument = deviceMapper.toDocument(device);
+            deviceDocument.setAncestors(ancestors);
+            deviceDocument = mongoRepository.save(deviceDocument);
+            Device savedDevice = deviceMapper.toDevice(deviceDocument);
+            // Published before releasing the locks, so that the next modification is validated against it
+            if (replicaMode != TopologyReplicaMode.DISABLED) {
+                replica.apply(savedDevice);
+            }
+            return savedDevice;
+        } finally {
+            lockService.releaseLocks(lockIds, lockToken);
+        }
+    }
+
+    /**
+     * Saves a batch of new devices taking the topology locks once for the whole batch.
+     * After validating the batch, all the documents are written with a single bulk insert,
+     * and deleted again if a device of the batch was saved concurrently.
+     *
+     * @param devices The new devices to save
+     * @return The saved devices
+     * @throws ConcurrentModificationException if unable to acquire a lock
+     * @throws ValidationException if the batch can't be added to the topology
+     */
+    @Override
+    public List<Device> saveAll(List<Device> devices) {
+        log.atDebug().addKeyValue("count", devices.size()).log("Saving a batch of {} devices", devices.size());
+        SortedSet<String> lockIds = topologyLockIds(devices);
+        String lockToken = lockService.acquireLocks(lockIds);
+        if (lockToken == null) {
+            throw new ConcurrentModificationException("Network topology is currently being modified. Please try again later.");
+        }
+
+        try {
+            if (!lockIds.equals(topologyLockIds(devices))) {
+                throw new ConcurrentModificationException("Network topology is currently being modified. Please try again later.");
+            }
+
+            validateNewDevicesBatch(devices);
 
-            log.info("Adding new device: " + device);
-            DeviceDocument deviceDocument = mongoRepository.save(deviceMapper.toDocument(device));
-            return deviceMapper.toDevice(deviceDocument);
+            Map<MacAddress, List<MacAddress>> ancestorsByMac = ancestorsOfNewDevicesBatch(devices);
+            List<DeviceDocument> documents = new ArrayList<>(devices.size());
+            for (Device device : devices) {
+                DeviceDocument document = deviceMapper.toDocument(device);
+                document.setAncestors(ancestorsByMac.get(device.getMacAddress()));
+                documents.add(document);
+            }
+            List<Device> savedDevices = insertBatch(documents).stream().map(deviceMapper::toDevice).toList();
+            if (replicaMode != TopologyReplicaMode.DISABLED) {
+                replica.applyAll(savedDevices);
+            }
+            return savedDevices;
         } finally {
-            lockService.releaseLock(lockToken);
+            lockService.releaseLocks(lockIds, lockToken);
+        }
+    }
+
+    /**
+     * Inserts the documents of a batch with an ordered bulk insert, deleting them all if one of them fails.
+     * With TREE locks a device of the batch may be saved concurrently under another tree: it passes the validation
+     * of both, and the bulk insert then stops at its duplicate key, after having inserted the previous documents.
+     *
+     * @throws ValidationException if a device of the batch was saved in the meantime
+     */
+    private List<DeviceDocument> insertBatch(List<DeviceDocument> documents) {
+        try {
+            return mongoRepository.insert(documents);
+        } catch (DuplicateKeyException e) {
+            if (!(e.getCause() instanceof MongoBulkWriteException bulkWriteException)) {
+                throw e;
+            }
+            // The insert is ordered: only the documents before the duplicate one were inserted
+            int duplicateIndex = bulkWriteException.getWriteErrors().getFirst().getIndex();
+            List<MacAddress> insertedMacs = documents.subList(0, duplicateIndex).stream()
+                    .map(DeviceDocument::getMacAddress)
+                    .toList();
+            if (!insertedMacs.isEmpty()) {
+                mongoTemplate.remove(Query.query(Criteria.where("_id").in(insertedMacs)), DeviceDocument.class);
+            }
+            throw new ValidationException("Device with MAC: " + documents.get(duplicateIndex).getMacAddress() + " already exists");
+        }
+    }
+
+    /**
+     * Checks for cycles with a single read of the uplink document, using its materialized ancestors path.
+     */
+    @Override
+    protected boolean wouldCreateCycle(MacAddress newDeviceMac, MacAddress directUplinkMac) {
+        if (newDeviceMac.equals(directUplinkMac)) {
+            return true;
+        }
+        TopologySnapshot snapshot = validationSnapshot();
+        List<MacAddress> ancestors = snapshot != null
+                ? snapshot.findAncestors(directUplinkMac)
+                : mongoRepository.findById(directUplinkMac).map(this::ancestorsOf).orElse(List.of());
+        recordCycleCheckHops(ancestors.size() + 1);
+        return ancestors.contains(newDeviceMac);
+    }
+
+    /**
+     * Finds the root of the tree of a device with a single read, using its materialized ancestors path.
+     */
+    @Override
+    protected MacAddress findRootMac(MacAddress mac) {
+        TopologySnapshot snapshot = validationSnapshot();
+        if (snapshot != null) {
+            List<MacAddress> ancestors = snapshot.findAncestors(mac);
+            return ancestors.isEmpty() ? mac : ancestors.getFirst();
+        }
+        return mongoRepository.findById(mac)
+                .map(document -> {
+                    List<MacAddress> ancestors = ancestorsOf(document);
+                    return ancestors.isEmpty() ? mac : ancestors.getFirst();
+                })
+                .orElse(mac);
+    }
+
+    /**
+     * Finds the uplink chain of a device with a single read, using its materialized ancestors path,
+     * or from the replica once it's loaded.
+     */
+    @Override
+    public List<MacAddress> findAncestors(MacAddress mac) {
+        if (replica.isReady()) {
+            return replica.findAncestors(mac);
+        }
+        return mongoRepository.findById(mac)
+                .map(this::ancestorsOf)
+                .orElse(List.of());
+    }
+
+    /**
+     * Validates the uplink of a device about to be saved and computes its ancestors path.
+     *
+     * @return The ancestors of the device, from the root of its tree down to its direct uplink
+     * @throws ValidationException if the uplink does not exist or if the device is one of its ancestors
+     */
+    private List<MacAddress> ancestorsOfNewDevice(Device device) {
+        MacAddress uplinkMac = device.getUplinkMacAddress();
+        if (uplinkMac == null) {
+            return List.of();
+        }
+
+        TopologySnapshot snapshot = validationSnapshot();
+        if (snapshot != null) {
+            if (snapshot.findById(uplinkMac).isEmpty()) {
+                throw new ValidationException("Uplink device with MAC: " + uplinkMac + " does not exist");
+            }
+            List<MacAddress> ancestors = snapshot.findAncestors(uplinkMac);
+            ancestors.add(uplinkMac);
+            recordCycleCheckHops(ancestors.size());
+            if (ancestors.contains(device.getMacAddress())) {
+                throw new ValidationException("Adding this device would create a circular connection in the network topology");
+            }
+            return ancestors;
+        }
+
+        DeviceDocument uplink = mongoRepository.findById(uplinkMac)
+                .orElseThrow(() -> new ValidationException("Uplink device with MAC: " + uplinkMac + " does not exist"));
+
+        List<MacAddress> ancestors = new ArrayList<>(ancestorsOf(uplink));
+        ancestors.add(uplinkMac);
+        recordCycleCheckHops(ancestors.size());
+        if (ancestors.contains(device.getMacAddress())) {
+            throw new ValidationException("Adding this device would create a circular connection in the network topology");
+        }
+        return ancestors;
+    }
+
+    /**
+     * Computes the ancestors paths of a validated batch of new devices.
+     * Uplinks outside the batch are read with a single query, paths within the batch are computed once per device.
+     */
+    private Map<MacAddress, List<MacAddress>> ancestorsOfNewDevicesBatch(List<Device> devices) {
+        Map<MacAddress, Device> batch = new HashMap<>();
+        devices.forEach(device -> batch.put(device.getMacAddress(), device));
+
+        Set<MacAddress> externalUplinkMacs = new HashSet<>();
+        for (Device device : devices) {
+            if (device.getUplinkMacAddress() != null && !batch.containsKey(device.getUplinkMacAddress())) {
+                externalUplinkMacs.add(device.getUplinkMacAddress());
+            }
+        }
+        // Ancestors of the devices attached to each uplink outside the batch
+        Map<MacAddress, List<MacAddress>> externalChildAncestors = new HashMap<>();
+        TopologySnapshot snapshot = validationSnapshot();
+        if (snapshot != null) {
+            for (MacAddress uplinkMac : externalUplinkMacs) {
+                List<MacAddress> childAncestors = snapshot.findAncestors(uplinkMac);
+                childAncestors.add(uplinkMac);
+                externalChildAncestors.put(uplinkMac, childAncestors);
+            }
+        } else {
+            for (DeviceDocument uplink : mongoRepository.findAllById(externalUplinkMacs)) {
+                List<MacAddress> uplinkAncestors = ancestorsOf(uplink);
+                List<MacAddress> childAncestors = new ArrayList<>(uplinkAncestors.size() + 1);
+                childAncestors.addAll(uplinkAncestors);
+                childAncestors.add(uplink.getMacAddress());
+                externalChildAncestors.put(uplink.getMacAddress(), childAncestors);
+            }
         }
+
+        Map<MacAddress, List<MacAddress>> batchAncestors = new HashMap<>();
+        for (Device device : devices) {
+            // Walk up within the batch until a device with known ancestors, or out of the batch
+            Deque<Device> unresolved = new ArrayDeque<>();
+            Device current = device;
+            while (current != null && !batchAncestors.containsKey(current.getMacAddress())) {
+                unresolved.push(current);
+                current = current.getUplinkMacAddress() == null ? null : batch.get(current.getUplinkMacAddress());
+            }
+            while (!unresolved.isEmpty()) {
+                Device next = unresolved.pop();
+                MacAddress uplinkMac = next.getUplinkMacAddress();
+                List<MacAddress> ancestors;
+                if (uplinkMac == null) {
+                    ancestors = List.of();
+                } else if (batch.containsKey(uplinkMac)) {
+                    List<MacAddress> uplinkAncestors = batchAncestors.get(uplinkMac);
+                    ancestors = new ArrayList<>(uplinkAncestors.size() + 1);
+                    ancestors.addAll(uplinkAncestors);
+                    ancestors.add(uplinkMac);
+                } else {
+                    ancestors = externalChildAncestors.get(uplinkMac);
+                }
+                batchAncestors.put(next.getMacAddress(), ancestors);
+            }
+        }
+        return batchAncestors;
     }
 
     /**
-     * Fetches a single device document + its entire subtree (all descendants)
-     * using $graphLookup. Returns a DeviceDocument whose `subtree` list
+     * Returns the ancestors path of a stored document.
+     * Documents written before paths were materialized don't have one: in that case it's computed
+     * by walking up the uplink chain.
+     */
+    private List<MacAddress> ancestorsOf(DeviceDocument document) {
+        if (document.getAncestors() != null) {
+            return document.getAncestors();
+        }
+
+        Deque<MacAddress> ancestors = new ArrayDeque<>();
+        Set<MacAddress> visitedMacs = new HashSet<>();
+        MacAddress currentMac = document.getUplinkMacAddress();
+        while (currentMac != null && visitedMacs.add(currentMac)) {
+            ancestors.addFirst(currentMac);
+            currentMac = mongoRepository.findById(currentMac)
+                    .map(DeviceDocument::getUplinkMacAddress)
+                    .orElse(null);
+        }
+        return new ArrayList<>(ancestors);
+    }
+
+    /**
+     * Computes the ids of the locks needed to save the given device.
+     * In {@link TopologyLockMode#TREE} mode these are the locks of the tree the device currently belongs to
+     * (the device itself if it's new) and of the tree of its new uplink.
+     */
+    private SortedSet<String> topologyLockIds(Device device) {
+        SortedSet<String> lockIds = new TreeSet<>();
+        if (lockMode == TopologyLockMode.GLOBAL) {
+            lockIds.add(TopologyLockDocument.GLOBAL_LOCK_ID);
+            return lockIds;
+        }
+
+        lockIds.add(TopologyLockDocument.treeLockId(findRootMac(device.getMacAddress()).getValue()));
+        if (device.getUplinkMacAddress() != null) {
+            lockIds.add(TopologyLockDocument.treeLockId(findRootMac(device.getUplinkMacAddress()).getValue()));
+        }
+        return lockIds;
+    }
+
+    /**
+     * Computes the ids of the locks needed to save a batch of new devices.
+     * In {@link TopologyLockMode#TREE} mode these are the locks of the trees of the uplinks outside the batch,
+     * and of the devices of the batch without uplink, which become new roots.
+     * Devices attached to other devices of the batch join trees already covered by these locks.
+     */
+    private SortedSet<String> topologyLockIds(List<Device> devices) {
+        SortedSet<String> lockIds = new TreeSet<>();
+        if (lockMode == TopologyLockMode.GLOBAL) {
+            lockIds.add(TopologyLockDocument.GLOBAL_LOCK_ID);
+            return lockIds;
+        }
+
+        Set<MacAddress> batchMacs = new HashSet<>();
+        devices.forEach(device -> batchMacs.add(device.getMacAddress()));
+        Set<MacAddress> externalUplinkMacs = new HashSet<>();
+        for (Device device : devices) {
+            MacAddress uplinkMac = device.getUplinkMacAddress();
+            if (uplinkMac == null) {
+                lockIds.add(TopologyLockDocument.treeLockId(device.getMacAddress().getValue()));
+            } else if (!batchMacs.contains(uplinkMac) && externalUplinkMacs.add(uplinkMac)) {
+                lockIds.add(TopologyLockDocument.treeLockId(findRootMac(uplinkMac).getValue()));
+            }
+        }
+        return lockIds;
+    }
+
+    /**
+     * Fetches a single device document + its subtree (the descendants selected by the filter)
+     * using $graphLookup, or from the local {@link TopologyReplica} when it's in use. Returns a DeviceDocument whose `subtree` list
      * contains the root and all descendants (flat).
      *
      * @param rootMac the MAC address of the root node you want
+     * @param filter the descendants to include, pushed down into the $graphLookup stage
      */
     @Override
-    public Optional<Device> fetchSubtree(MacAddress rootMac) {
-        // 1) Match stage: find exactly the document whose mac == rootMac
-        MatchOperation match = Aggregation.match(Criteria.where("_id").is(rootMac));
-
-        // 2) $graphLookup stage: from "devices" collection,
-        //    startWith "$mac" (the matched root's MAC),
-        //    connectFromField = "mac", connectToField = "uplinkMac",
-        //    as = "subtree"
-        GraphLookupOperation graphLookup = GraphLookupOperation.builder()
-                .from("devices")
-                .startWith("_id")
-                .connectFrom("_id")
-                .connectTo("uplinkMac")
-                .as("downlinkDevices");
+    public Optional<Device> fetchSubtree(MacAddress rootMac, SubtreeFilter filter) {
+        if (replica.isReady()) {
+            return replica.fetchSubtree(rootMac, filter);
+        }
 
-        // 3) Build the aggregation pipeline
-        Aggregation agg = Aggregation.newAggregation(match, graphLookup);
+        // 1) Build the aggregation pipeline: match the root, then $graphLookup its descendants
+        Aggregation agg = subtreeAggregation(rootMac, filter);
 
-        // 4) Execute the aggregation; map results directly into DeviceDocument.class
+        // 2) Execute the aggregation; map results directly into DeviceDocument.class
+        Timer aggregationTimer = filter.isUnrestricted() ? subtreeAggregation : filteredSubtreeAggregation;
         AggregationResults<DeviceDocument> results =
-                mongoTemplate.aggregate(agg, "devices", DeviceDocument.class);
+                aggregationTimer.record(() -> mongoTemplate.aggregate(agg, "devices", DeviceDocument.class));
 
         // There will be at most one document, since we matched on a unique MAC.
         if (results.getMappedResults().isEmpty()) {
             return Optional.empty();
         } else {
             DeviceDocument rootDevice = results.getMappedResults().getFirst();
+            List<DeviceDocument> descendants = rootDevice.getDownlinkDevices();
+            subtreeSize.record(1 + (descendants != null ? descendants.size() : 0));
             
             // Process the device tree to build the full hierarchy
             buildDeviceHierarchy(rootDevice);
@@ -127,42 +602,177 @@ public class DeviceMongoRepository extends DeviceRepository {
     }
 
     /**
-     * Recursively builds the device hierarchy by organizing the flat list of downlink devices
-     * into a proper tree structure.
+     * Builds the pipeline fetching a device and its filtered descendants:
+     * <ul>
+     *   <li>Match stage: find exactly the document whose _id == rootMac</li>
+     *   <li>$graphLookup stage: from the "devices" collection, startWith "$_id" (the matched root's MAC),
+     *       connectFromField = "_id", connectToField = "uplinkMac", as = "downlinkDevices".
+     *       The maximum depth and the device types become its maxDepth and restrictSearchWithMatch,
+     *       so MongoDB stops recursing at the excluded devices. Skipped altogether when only the root is requested.</li>
+     * </ul>
      */
-    private void buildDeviceHierarchy(DeviceDocument device) {
-        if (device.getDownlinkDevices() == null || device.getDownlinkDevices().isEmpty()) {
-            // No children, set empty list
-            device.setDownlinkDevices(List.of());
-            return;
+    static Aggregation subtreeAggregation(MacAddress rootMac, SubtreeFilter filter) {
+        MatchOperation match = Aggregation.match(Criteria.where("_id").is(rootMac));
+        if (filter.maxDepth() != null && filter.maxDepth() == 0) {
+            return Aggregation.newAggregation(match);
         }
 
-        // Create a copy of the flat list of all descendants
-        List<DeviceDocument> allDescendants = new ArrayList<>(device.getDownlinkDevices());
+        GraphLookupOperation.GraphLookupOperationBuilder graphLookup = GraphLookupOperation.builder()
+                .from("devices")
+                .startWith("_id")
+                .connectFrom("_id")
+                .connectTo("uplinkMac");
+        if (filter.maxDepth() != null) {
+            // $graphLookup's maxDepth counts the recursions after the direct downlinks
+            graphLookup.maxDepth(filter.maxDepth() - 1);
+        }
+        if (filter.deviceTypes() != null) {
+            graphLookup.restrictSearchWithMatch(Criteria.where("deviceType").in(filter.deviceTypes()));
+        }
+        return Aggregation.newAggregation(match, graphLookup.as("downlinkDevices"));
+    }
 
-        // Get all direct children of this device
-        List<DeviceDocument> directChildren = allDescendants.stream()
-                .filter(child -> child.getUplinkMacAddress() != null &&
-                       child.getUplinkMacAddress().equals(device.getMacAddress()))
-                .collect(Collectors.toList());
+    /**
+     * @return true once the {@link TopologyReplica} is loaded and serves the reads
+     */
+    @Override
+    public boolean readsFromMemory() {
+        return replica.isReady();
+    }
 
-        // Set the direct children as the downlink devices
-        device.setDownlinkDevices(directChildren);
+    /**
+     * Streams the whole devices collection once, then links every document to its uplink
+     * to obtain all the trees of the topology in a single pass.
+     * Served from the local {@link TopologyReplica} instead when it's in use.
+     */
+    @Override
+    public List<Device> fetchForest() {
+        if (replica.isReady()) {
+            return replica.fetchForest();
+        }
 
-        // Recursively process each child, passing the complete list of descendants
-        for (DeviceDocument child : directChildren) {
-            // For each child, we need to build its own device hierarchy
+        List<DeviceDocument> roots = new ArrayList<>();
+        List<DeviceDocument> allDocuments = new ArrayList<>();
+        try (Stream<DeviceDocument> documents = mongoTemplate.stream(new Query(), DeviceDocument.class)) {
+            documents.forEach(document -> {
+                allDocuments.add(document);
+                if (document.getUplinkMacAddress() == null) {
+                    roots.add(document);
+                }
+            });
+        }
 
-            // we remove the child itself from the copy of the flat list of all descendants
-            List<DeviceDocument> childDescendants = allDescendants.stream()
-                    .filter(descendant -> !descendant.getMacAddress().equals(child.getMacAddress()))
-                    .collect(Collectors.toList());
+        linkDownlinkDevices(roots, groupByUplinkMac(allDocuments));
+        return roots.stream().map(deviceMapper::toDevice).toList();
+    }
 
-            // Set the potential descendants to the child
-            child.setDownlinkDevices(childDescendants);
+    /**
+     * Streams every device in depth-first order (see {@link #depthFirstAggregation(AggregationOperation)}),
+     * reading only its MAC address, type and depth: only the uplink chain of the current device is held in memory,
+     * whatever the size of the trees.
+     * Documents written before paths were materialized get theirs at startup (see {@link #backfillAncestors()}),
+     * until then they are read at depth 0, like roots. Nothing is written while visiting.
+     */
+    @Override
+    public void visitForest(TopologyVisitor visitor) {
+        ProjectionOperation projection = Aggregation.project("deviceType")
+                .and(ArrayOperators.Size.lengthOfArray(ConditionalOperators.ifNull("ancestors").then(List.of()))).as("depth");
+        Deque<MacAddress> path = new ArrayDeque<>();
+        try (Stream<org.bson.Document> devices =
+                     mongoTemplate.aggregateStream(depthFirstAggregation(projection), "devices", org.bson.Document.class)) {
+            devices.forEach(device -> {
+                // Exit the devices of the previous subtree which are not uplinks of this one
+                int depth = device.getInteger("depth");
+                while (path.size() > depth) {
+                    visitor.exitDevice(path.pop());
+                }
+                MacAddress mac = mongoTemplate.getConverter().getConversionService().convert(device.get("_id"), MacAddress.class);
+                visitor.enterDevice(mac, DeviceType.valueOf(device.getString("deviceType")));
+                path.push(mac);
+            });
+        }
+        while (!path.isEmpty()) {
+            visitor.exitDevice(path.pop());
+        }
+    }
+
+    /**
+     * Builds the pipeline reading all the devices in depth-first order, sorted by their materialized path:
+     * the MAC addresses of their ancestors and their own, joined with a separator.
+     * MAC addresses have a fixed length, so a path is a prefix of the paths of all the descendants of the device
+     * and every device comes right after its uplink and its previous siblings' subtrees.
+     * <p>
+     * The sort can't use an index: MongoDB sorts the whole collection, spilling to disk past its 100MB memory limit,
+     * and then returns the devices through a cursor.
+     *
+     * @param projection The fields of the devices to read, applied after the sort
+     */
+    static Aggregation depthFirstAggregation(AggregationOperation projection) {
+        AggregationExpression path = context -> new org.bson.Document("$reduce", new org.bson.Document()
+                .append("input", new org.bson.Document("$concatArrays",
+                        List.of(new org.bson.Document("$ifNull", List.of("$ancestors", List.of())), List.of("$_id"))))
+                .append("initialValue", "")
+                .append("in", new org.bson.Document("$concat", List.of("$$value", PATH_SEPARATOR, "$$this"))));
+        return Aggregation.newAggregation(
+                        Aggregation.addFields().addFieldWithValue(PATH_FIELD, path).build(),
+                        Aggregation.sort(Sort.Direction.ASC, PATH_FIELD),
+                        projection)
+                .withOptions(AggregationOptions.builder().allowDiskUse(true).build());
+    }
+
+    /**
+     * Stores the ancestors path in the documents written before paths were materialized,
+     * so that they are found in depth-first order. Documents already up to date are not touched.
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void backfillAncestors() {
+        Query missingPath = Query.query(Criteria.where("ancestors").exists(false));
+        try (Stream<DeviceDocument> documents = mongoTemplate.stream(missingPath, DeviceDocument.class)) {
+            documents.forEach(document -> mongoTemplate.updateFirst(
+                    Query.query(Criteria.where("_id").is(document.getMacAddress()).and("ancestors").exists(false)),
+                    Update.update("ancestors", ancestorsOf(document)),
+                    DeviceDocument.class
+            ));
+        }
+    }
 
-            // Recursively build the hierarchy for this child
-            buildDeviceHierarchy(child);
+    /**
+     * Organizes the flat list of descendants returned by $graphLookup into a proper tree structure.
+     * The descendants are grouped by uplink MAC in a single pass and then linked by reference,
+     * so both time and allocations are linear in the subtree size.
+     * Made package-private for benchmarking.
+     */
+    static void buildDeviceHierarchy(DeviceDocument root) {
+        List<DeviceDocument> descendants = root.getDownlinkDevices() == null ? List.of() : root.getDownlinkDevices();
+        linkDownlinkDevices(List.of(root), groupByUplinkMac(descendants));
+    }
+
+    /**
+     * Groups the given documents by the MAC address of their uplink.
+     * Documents without an uplink are not part of any group.
+     */
+    static Map<MacAddress, List<DeviceDocument>> groupByUplinkMac(Collection<DeviceDocument> documents) {
+        Map<MacAddress, List<DeviceDocument>> byUplinkMac = HashMap.newHashMap(documents.size());
+        for (DeviceDocument document : documents) {
+            if (document.getUplinkMacAddress() != null) {
+                byUplinkMac.computeIfAbsent(document.getUplinkMacAddress(), k -> new ArrayList<>()).add(document);
+            }
+        }
+        return byUplinkMac;
+    }
+
+    /**
+     * Sets the downlink devices of every document reachable from the given roots, using the
+     * documents grouped by uplink MAC. The traversal is iterative to support deep topologies.
+     */
+    static void linkDownlinkDevices(Collection<DeviceDocument> roots,
+                                    Map<MacAddress, List<DeviceDocument>> byUplinkMac) {
+        Deque<DeviceDocument> pending = new ArrayDeque<>(roots);
+        while (!pending.isEmpty()) {
+            DeviceDocument device = pending.pop();
+            List<DeviceDocument> directChildren = byUplinkMac.getOrDefault(device.getMacAddress(), List.of());
+            device.setDownlinkDevices(directChildren);
+            pending.addAll(directChildren);
         }
     }
 }
@@ -0,0 +1,83 @@
+package com.alesmontaldo.network_controller.domain.device.persistance.mongo_db;
+
+import com.alesmontaldo.network_controller.codegen.types.Device;
+import com.alesmontaldo.network_controller.codegen.types.DeviceResultView;
+import com.alesmontaldo.network_controller.domain.device.MacAddress;
+import com.alesmontaldo.network_controller.domain.device.persistance.ReactiveDeviceRepository;
+import com.alesmontaldo.network_controller.domain.device.persistance.SubtreeFilter;
+import java.util.List;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Profile;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.ReactiveMongoTemplate;
+import org.springframework.data.mongodb.core.aggregation.Aggregation;
+import org.springframework.data.mongodb.core.aggregation.UnsetOperation;
+import org.springframework.stereotype.Repository;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+/**
+ * Reactive MongoDB implementation of the topology reads, built on the reactive streams driver.
+ * Uses the same queries as {@link DeviceMongoRepository}, but documents are emitted as the driver reads them:
+ * sorted devices are streamed from the (deviceTypeOrder, _id) index and the forest one tree at a time,
+ * read in depth-first order.
+ * Reads always go to MongoDB: ReactiveDeviceService only uses this repository when the reads are not served from memory.
+ */
+@Repository
+@Profile("!in-memory")
+@ConditionalOnProperty(name = "network-controller.reactive-reads.enabled", havingValue = "true")
+public class ReactiveDeviceMongoRepository implements ReactiveDeviceRepository {
+
+    private final ReactiveMongoTemplate reactiveMongoTemplate;
+    private final DeviceMapper deviceMapper;
+
+    public ReactiveDeviceMongoRepository(ReactiveMongoTemplate reactiveMongoTemplate, DeviceMapper deviceMapper) {
+        this.reactiveMongoTemplate = reactiveMongoTemplate;
+        this.deviceMapper = deviceMapper;
+    }
+
+    /**
+     * Walks the (deviceTypeOrder, _id) index in order and projects every document to its MAC address and type,
+     * read straight into the views as in {@link DeviceMongoRepository#findAllViewsSorted()}.
+     */
+    @Override
+    public Flux<DeviceResultView> findAllViewsSorted() {
+        Aggregation agg = Aggregation.newAggregation(
+                Aggregation.sort(Sort.by(Sort.Direction.ASC, "deviceTypeOrder", "_id")),
+                DeviceMongoRepository.viewProjection()
+        );
+        return reactiveMongoTemplate.aggregate(agg, "devices", DeviceResultView.class);
+    }
+
+    @Override
+    public Mono<Device> fetchSubtree(MacAddress rootMac, SubtreeFilter filter) {
+        Aggregation agg = DeviceMongoRepository.subtreeAggregation(rootMac, filter);
+        return reactiveMongoTemplate.aggregate(agg, "devices", DeviceDocument.class)
+                .next()
+                .map(this::toDeviceHierarchy);
+    }
+
+    /**
+     * Reads the devices in depth-first order (see {@link DeviceMongoRepository#depthFirstAggregation}) and emits
+     * every tree as soon as its last device is read: a tree starts with its root, the next root closes it.
+     * Relies on the materialized paths, which the blocking repository backfills at startup.
+     */
+    @Override
+    public Flux<Device> fetchForest() {
+        Aggregation agg = DeviceMongoRepository.depthFirstAggregation(UnsetOperation.unset(DeviceMongoRepository.PATH_FIELD));
+        return reactiveMongoTemplate.aggregate(agg, "devices", DeviceDocument.class)
+                .bufferUntil(document -> document.getUplinkMacAddress() == null, true)
+                .map(this::toTree);
+    }
+
+    private Device toTree(List<DeviceDocument> documents) {
+        DeviceDocument root = documents.getFirst();
+        DeviceMongoRepository.linkDownlinkDevices(List.of(root), DeviceMongoRepository.groupByUplinkMac(documents));
+        return deviceMapper.toDevice(root);
+    }
+
+    private Device toDeviceHierarchy(DeviceDocument root) {
+        DeviceMongoRepository.buildDeviceHierarchy(root);
+        return deviceMapper.toDevice(root);
+    }
+}
@@ -0,0 +1,118 @@
+package com.alesmontaldo.network_controller.domain.device.persistance.mongo_db;
+
+import com.alesmontaldo.network_controller.codegen.types.Device;
+import com.alesmontaldo.network_controller.domain.device.MacAddress;
+import com.alesmontaldo.network_controller.domain.device.persistance.SubtreeFilter;
+import java.util.*;
+import java.util.concurrent.atomic.AtomicReference;
+import org.springframework.context.annotation.Profile;
+import org.springframework.stereotype.Component;
+
+/**
+ * Local copy of the devices collection, so that reads can be served without querying MongoDB.
+ * It's loaded at startup and then kept up to date with the devices saved through this node and,
+ * when following the change stream (see DeviceChangeStreamListener), with the ones saved by the other nodes.
+ * <p>
+ * The content is an immutable {@link TopologySnapshot}: every change publishes a new version atomically,
+ * so reads never take a lock and always see a consistent topology, even while changes are being applied.
+ * <p>
+ * The replica is only used once it has been loaded: until then, and whenever it has to be reloaded,
+ * {@link #isReady()} is false and reads should go to MongoDB.
+ */
+@Component
+@Profile("!in-memory")
+public class TopologyReplica {
+
+    private final AtomicReference<TopologySnapshot> current = new AtomicReference<>(TopologySnapshot.EMPTY);
+    private volatile boolean ready = false;
+
+    public boolean isReady() {
+        return ready;
+    }
+
+    /**
+     * @return The current version of the topology, which is never modified
+     */
+    public TopologySnapshot snapshot() {
+        return current.get();
+    }
+
+    /**
+     * Replaces the content of the replica, then marks it as ready.
+     *
+     * @param loadedDevices All the devices of the collection
+     */
+    public void load(Collection<Device> loadedDevices) {
+        current.set(TopologySnapshot.of(loadedDevices));
+        ready = true;
+    }
+
+    /**
+     * Marks the replica as not ready, so that reads go to MongoDB until it's loaded again.
+     */
+    public void invalidate() {
+        ready = false;
+    }
+
+    /**
+     * Inserts or replaces a device.
+     *
+     * @param device The device as stored in MongoDB, without downlink devices
+     */
+    public void apply(Device device) {
+        current.updateAndGet(snapshot -> snapshot.with(device));
+    }
+
+    /**
+     * Inserts or replaces devices, publishing a single new version.
+     *
+     * @param devices The devices as stored in MongoDB, without downlink devices
+     */
+    public void applyAll(Collection<Device> devices) {
+        current.updateAndGet(snapshot -> {
+            TopologySnapshot updated = snapshot;
+            for (Device device : devices) {
+                updated = updated.with(device);
+            }
+            return updated;
+        });
+    }
+
+    public void remove(MacAddress mac) {
+        current.updateAndGet(snapshot -> snapshot.without(mac));
+    }
+
+    public Optional<Device> findById(MacAddress mac) {
+        return snapshot().findById(mac);
+    }
+
+    public List<Device> findDownlinks(Collection<MacAddress> uplinkMacs) {
+        return snapshot().findDownlinks(uplinkMacs);
+    }
+
+    /**
+     * @return All the devices of the replica, without downlink devices
+     */
+    public Collection<Device> findAll() {
+        return snapshot().findAll();
+    }
+
+    /**
+     * @return The MAC addresses of the ancestors of the device, from the root of its tree down to its direct uplink
+     */
+    public List<MacAddress> findAncestors(MacAddress mac) {
+        return snapshot().findAncestors(mac);
+    }
+
+    public Optional<Device> fetchSubtree(MacAddress rootMac) {
+        return fetchSubtree(rootMac, SubtreeFilter.NONE);
+    }
+
+    public Optional<Device> fetchSubtree(MacAddress rootMac, SubtreeFilter filter) {
+        return snapshot().fetchSubtree(rootMac, filter);
+    }
+
+    public List<Device> fetchForest() {
+        return snapshot().fetchForest();
+    }
+}
@@ -0,0 +1,26 @@
+package com.alesmontaldo.network_controller.domain.device.persistance.mongo_db;
+
+/**
+ * How the local {@link TopologyReplica} of the devices collection is kept up to date.
+ */
+public enum TopologyReplicaMode {
+
+    /**
+     * No replica: every read goes to MongoDB.
+     */
+    DISABLED,
+
+    /**
+     * The replica is loaded at startup and updated with the devices saved through this node only.
+     * Since no other node can modify the topology behind its back, the replica also serves the topology
+     * validations made while saving: only valid for a single node deployment.
+     */
+    LOCAL,
+
+    /**
+     * The replica follows the change stream of the devices collection, seeing the modifications made
+     * by every node. The validations made while saving still read MongoDB, since the changes of the other
+     * nodes are applied with a delay. Change streams require MongoDB to run as a replica set.
+     */
+    CHANGE_STREAM
+}
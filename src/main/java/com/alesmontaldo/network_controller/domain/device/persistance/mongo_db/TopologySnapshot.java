@@ -0,0 +1,206 @@
+package com.alesmontaldo.network_controller.domain.device.persistance.mongo_db;
+
+import com.alesmontaldo.network_controller.codegen.types.*;
+import com.alesmontaldo.network_controller.domain.device.MacAddress;
+import com.alesmontaldo.network_controller.domain.device.persistance.SubtreeFilter;
+import java.util.*;
+import org.pcollections.HashTreePMap;
+import org.pcollections.HashTreePSet;
+import org.pcollections.PMap;
+import org.pcollections.PSet;
+
+/**
+ * Immutable version of the whole topology, held by the {@link TopologyReplica}.
+ * The devices and the adjacency index are persistent maps: {@link #with(Device)} and {@link #without(MacAddress)}
+ * return a new version sharing all the unchanged entries with this one, at a cost logarithmic in the number
+ * of devices, so that readers can keep using an older version while a new one is published.
+ * <p>
+ * The stored devices have no downlink devices, and must not be modified: reads return copies of them.
+ */
+public final class TopologySnapshot {
+
+    public static final TopologySnapshot EMPTY = new TopologySnapshot(HashTreePMap.empty(), HashTreePMap.empty());
+
+    private final PMap<MacAddress, Device> devices;
+    // Adjacency index: uplink MAC -> MACs of its direct downlink devices
+    private final PMap<MacAddress, PSet<MacAddress>> downlinks;
+
+    private TopologySnapshot(PMap<MacAddress, Device> devices, PMap<MacAddress, PSet<MacAddress>> downlinks) {
+        this.devices = devices;
+        this.downlinks = downlinks;
+    }
+
+    /**
+     * @param devices The devices, without downlink devices
+     * @return The snapshot of the given devices
+     */
+    public static TopologySnapshot of(Collection<Device> devices) {
+        TopologySnapshot snapshot = EMPTY;
+        for (Device device : devices) {
+            snapshot = snapshot.with(device);
+        }
+        return snapshot;
+    }
+
+    /**
+     * @param device The device to insert or replace, without downlink devices
+     * @return A new snapshot containing the device
+     */
+    public TopologySnapshot with(Device device) {
+        MacAddress mac = device.getMacAddress();
+        MacAddress uplinkMac = device.getUplinkMacAddress();
+        Device previous = devices.get(mac);
+
+        PMap<MacAddress, PSet<MacAddress>> newDownlinks = downlinks;
+        if (previous != null && previous.getUplinkMacAddress() != null && !previous.getUplinkMacAddress().equals(uplinkMac)) {
+            newDownlinks = withoutDownlink(newDownlinks, previous.getUplinkMacAddress(), mac);
+        }
+        if (uplinkMac != null) {
+            PSet<MacAddress> siblings = newDownlinks.get(uplinkMac);
+            newDownlinks = newDownlinks.plus(uplinkMac, siblings == null ? HashTreePSet.singleton(mac) : siblings.plus(mac));
+        }
+        return new TopologySnapshot(devices.plus(mac, device), newDownlinks);
+    }
+
+    /**
+     * @param mac The MAC address of the device to remove
+     * @return A new snapshot without the device, or this one if it does not contain the device
+     */
+    public TopologySnapshot without(MacAddress mac) {
+        Device removed = devices.get(mac);
+        if (removed == null) {
+            return this;
+        }
+
+        PMap<MacAddress, PSet<MacAddress>> newDownlinks = downlinks;
+        if (removed.getUplinkMacAddress() != null) {
+            newDownlinks = withoutDownlink(newDownlinks, removed.getUplinkMacAddress(), mac);
+        }
+        return new TopologySnapshot(devices.minus(mac), newDownlinks);
+    }
+
+    private static PMap<MacAddress, PSet<MacAddress>> withoutDownlink(PMap<MacAddress, PSet<MacAddress>> downlinks,
+                                                                    MacAddress uplinkMac, MacAddress mac) {
+        PSet<MacAddress> siblings = downlinks.get(uplinkMac);
+        if (siblings == null) {
+            return downlinks;
+        }
+        PSet<MacAddress> remaining = siblings.minus(mac);
+        return remaining.isEmpty() ? downlinks.minus(uplinkMac) : downlinks.plus(uplinkMac, remaining);
+    }
+
+    public int size() {
+        return devices.size();
+    }
+
+    public Optional<Device> findById(MacAddress mac) {
+        return Optional.ofNullable(devices.get(mac)).map(device -> copyWithChildren(device, null));
+    }
+
+    /**
+     * @return The devices found among the given MAC addresses, in no particular order
+     */
+    public List<Device> findAllById(Collection<MacAddress> macs) {
+        List<Device> found = new ArrayList<>(macs.size());
+        for (MacAddress mac : macs) {
+            Device device = devices.get(mac);
+            if (device != null) {
+                found.add(copyWithChildren(device, null));
+            }
+        }
+        return found;
+    }
+
+    /**
+     * @return The direct downlink devices of the given uplinks, read from the adjacency index, in no particular order
+     */
+    public List<Device> findDownlinks(Collection<MacAddress> uplinkMacs) {
+        List<Device> found = new ArrayList<>();
+        for (MacAddress uplinkMac : uplinkMacs) {
+            for (MacAddress downlinkMac : downlinks.getOrDefault(uplinkMac, HashTreePSet.empty())) {
+                Device device = devices.get(downlinkMac);
+                if (device != null) {
+                    found.add(copyWithChildren(device, null));
+                }
+            }
+        }
+        return found;
+    }
+
+    /**
+     * @return All the devices of the snapshot, without downlink devices. The devices must not be modified
+     */
+    public Collection<Device> findAll() {
+        return Collections.unmodifiableCollection(devices.values());
+    }
+
+    /**
+     * @return The MAC addresses of the ancestors of the device, from the root of its tree down to its direct uplink
+     */
+    public List<MacAddress> findAncestors(MacAddress mac) {
+        Deque<MacAddress> ancestors = new ArrayDeque<>();
+        Set<MacAddress> visitedMacs = new HashSet<>();
+        MacAddress currentMac = uplinkOf(mac);
+        while (currentMac != null && visitedMacs.add(currentMac)) {
+            ancestors.addFirst(currentMac);
+            currentMac = uplinkOf(currentMac);
+        }
+        return new ArrayList<>(ancestors);
+    }
+
+    private MacAddress uplinkOf(MacAddress mac) {
+        Device device = devices.get(mac);
+        return device == null ? null : device.getUplinkMacAddress();
+    }
+
+    public Optional<Device> fetchSubtree(MacAddress rootMac) {
+        return fetchSubtree(rootMac, SubtreeFilter.NONE);
+    }
+
+    public Optional<Device> fetchSubtree(MacAddress rootMac, SubtreeFilter filter) {
+        return Optional.ofNullable(devices.get(rootMac)).map(root -> buildDeviceHierarchy(root, filter));
+    }
+
+    public List<Device> fetchForest() {
+        return devices.values().stream()
+                .filter(device -> device.getUplinkMacAddress() == null)
+                .map(root -> buildDeviceHierarchy(root, SubtreeFilter.NONE))
+                .toList();
+    }
+
+    /**
+     * Builds a copy of the hierarchy below the given device by following the adjacency index, iteratively.
+     * Devices excluded by the filter are skipped together with their downlinks.
+     */
+    private Device buildDeviceHierarchy(Device root, SubtreeFilter filter) {
+        record Pending(Device copy, int depth) {
+        }
+
+        Device rootCopy = copyWithChildren(root, new ArrayList<>());
+
+        Deque<Pending> pending = new ArrayDeque<>();
+        pending.push(new Pending(rootCopy, 0));
+        while (!pending.isEmpty()) {
+            Pending parent = pending.pop();
+            int childDepth = parent.depth() + 1;
+            for (MacAddress childMac : downlinks.getOrDefault(parent.copy().getMacAddress(), HashTreePSet.empty())) {
+                Device child = devices.get(childMac);
+                if (child == null || !filter.includes(childDepth, child.getDeviceType())) {
+                    continue;
+                }
+                Device childCopy = copyWithChildren(child, new ArrayList<>());
+                parent.copy().getDownlinkDevices().add(childCopy);
+                pending.push(new Pending(childCopy, childDepth));
+            }
+        }
+        return rootCopy;
+    }
+
+    private static Device copyWithChildren(Device device, List<Device> children) {
+        return switch (device.getDeviceType()) {
+            case GATEWAY -> new Gateway(device.getMacAddress(), device.getUplinkMacAddress(), DeviceType.GATEWAY, children);
+            case SWITCH -> new Switch(device.getMacAddress(), device.getUplinkMacAddress(), DeviceType.SWITCH, children);
+            case ACCESS_POINT -> new AccessPoint(device.getMacAddress(), device.getUplinkMacAddress(), DeviceType.ACCESS_POINT, children);
+        };
+    }
+}
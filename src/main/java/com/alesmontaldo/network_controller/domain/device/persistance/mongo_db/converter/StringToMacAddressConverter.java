@@ -1,6 +1,7 @@
 package com.alesmontaldo.network_controller.domain.device.persistance.mongo_db.converter;
 
 import com.alesmontaldo.network_controller.domain.device.MacAddress;
+import com.alesmontaldo.network_controller.domain.device.MacAddressInterner;
 import org.springframework.core.convert.converter.Converter;
 import org.springframework.data.convert.ReadingConverter;
 import org.springframework.stereotype.Component;
@@ -17,6 +18,6 @@ public class StringToMacAddressConverter implements Converter<String, MacAddress
         if (source == null) {
             return null;
         }
-        return new MacAddress(source);
+        return MacAddressInterner.shared().intern(source);
     }
 }
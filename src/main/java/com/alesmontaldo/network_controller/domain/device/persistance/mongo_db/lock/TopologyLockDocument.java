@@ -11,8 +11,11 @@ import java.util.Date;
  */
 @Document(collection = "topology_locks")
 public class TopologyLockDocument {
+    public static final String GLOBAL_LOCK_ID = "TOPOLOGY_LOCK";
+    private static final String TREE_LOCK_ID_PREFIX = "TREE_LOCK:";
+
     @Id
-    private String id = "TOPOLOGY_LOCK"; // Single lock for the entire topology
+    private String id = GLOBAL_LOCK_ID; // Single lock for the entire topology, unless specified
     
     private String owner;        // Unique identifier for the thread/process holding the lock
     private Date acquiredAt;     // When the lock was acquired
@@ -26,6 +29,19 @@ public class TopologyLockDocument {
         this.expiresAt = expiresAt;
     }
 
+    public TopologyLockDocument(String id, String owner, Date acquiredAt, Date expiresAt) {
+        this(owner, acquiredAt, expiresAt);
+        this.id = id;
+    }
+
+    /**
+     * @param rootMac The MAC address of the root of a tree of the topology
+     * @return The id of the lock guarding the given tree
+     */
+    public static String treeLockId(String rootMac) {
+        return TREE_LOCK_ID_PREFIX + rootMac;
+    }
+
     public String getId() {
         return id;
     }
@@ -0,0 +1,18 @@
+package com.alesmontaldo.network_controller.infrastructure.configuration;
+
+import com.alesmontaldo.network_controller.infrastructure.logging.LogSampler;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+/**
+ * Configures the sampling of the per-request log events.
+ */
+@Configuration
+public class LoggingConfig {
+
+    @Bean
+    public LogSampler requestLogSampler(@Value("${network-controller.logging.request-sample-rate:0.01}") double sampleRate) {
+        return new LogSampler(sampleRate);
+    }
+}
@@ -0,0 +1,44 @@
+package com.alesmontaldo.network_controller.infrastructure.configuration;
+
+import com.alesmontaldo.network_controller.domain.device.MacAddressInterner;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+/**
+ * Configures the pool of MAC address instances shared by the Mongo, GraphQL and JSON converters,
+ * and exposes its hits and misses as metrics.
+ * The converters read the pool through {@link MacAddressInterner#shared()}: it's installed when the bean is created,
+ * and the disabled pool is restored when the context is closed.
+ */
+@Configuration
+public class MacAddressInterningConfig {
+
+    @Bean
+    public MacAddressInterner macAddressInterner(
+            @Value("${network-controller.mac-address-interning.enabled:false}") boolean enabled,
+            @Value("${network-controller.mac-address-interning.capacity:65536}") int capacity,
+            MeterRegistry meterRegistry) {
+        MacAddressInterner interner = new MacAddressInterner(enabled ? capacity : 0);
+        FunctionCounter.builder("mac.address.interner.hits", interner, MacAddressInterner::getHits)
+                .description("MAC addresses served by a pooled instance")
+                .register(meterRegistry);
+        FunctionCounter.builder("mac.address.interner.misses", interner, MacAddressInterner::getMisses)
+                .description("MAC addresses not found in the pool, parsed into a new instance")
+                .register(meterRegistry);
+        Gauge.builder("mac.address.interner.hit.ratio", interner, MacAddressInterner::getHitRate)
+                .description("Ratio of the lookups served by a pooled instance since startup")
+                .register(meterRegistry);
+        MacAddressInterner.setShared(interner);
+        return interner;
+    }
+
+    @PreDestroy
+    public void resetSharedInterner() {
+        MacAddressInterner.resetShared();
+    }
+}
@@ -0,0 +1,39 @@
+package com.alesmontaldo.network_controller.infrastructure.configuration;
+
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.retry.RetryCallback;
+import org.springframework.retry.RetryContext;
+import org.springframework.retry.RetryListener;
+
+/**
+ * Configures the metrics which are not recorded by the instrumented components themselves.
+ * The Micrometer registry, the @Timed aspect and the GraphQL request and data fetcher timers
+ * are auto-configured by the actuator, see the management section of application.yml.
+ */
+@Configuration
+public class MetricsConfig {
+
+    /**
+     * Records the number of retries of each @Retryable call once it's over, as the topology.save.retries distribution,
+     * tagged with the label of the retried method and with the outcome of the call.
+     * Applied to every @Retryable method, since retry listener beans are global.
+     */
+    @Bean
+    public RetryListener retryMetricsListener(MeterRegistry meterRegistry) {
+        return new RetryListener() {
+            @Override
+            public <T, E extends Throwable> void close(RetryContext context, RetryCallback<T, E> callback, Throwable throwable) {
+                Object label = context.getAttribute(RetryContext.NAME);
+                DistributionSummary.builder("topology.save.retries")
+                        .description("Retries of the topology modifications before they succeeded or gave up")
+                        .tag("method", label != null ? label.toString() : "unknown")
+                        .tag("outcome", throwable == null ? "success" : "failure")
+                        .register(meterRegistry)
+                        .record(context.getRetryCount());
+            }
+        };
+    }
+}
@@ -0,0 +1,37 @@
+package com.alesmontaldo.network_controller.infrastructure.configuration;
+
+import com.alesmontaldo.network_controller.application.TopologyCache;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+/**
+ * Configures the cache of topology trees used by the device service,
+ * and exposes its hits, misses, evictions and weighted size as metrics.
+ */
+@Configuration
+public class TopologyCacheConfig {
+
+    @Bean
+    public TopologyCache topologyCache(@Value("${network-controller.topology-cache.max-nodes:0}") long maxNodes,
+                                       MeterRegistry meterRegistry) {
+        TopologyCache topologyCache = new TopologyCache(maxNodes);
+        FunctionCounter.builder("topology.cache.hits", topologyCache, TopologyCache::getHits)
+                .description("Topology trees served from the cache")
+                .register(meterRegistry);
+        FunctionCounter.builder("topology.cache.misses", topologyCache, TopologyCache::getMisses)
+                .description("Topology trees loaded from the repository on a cache miss")
+                .register(meterRegistry);
+        FunctionCounter.builder("topology.cache.evictions", topologyCache, TopologyCache::getEvictions)
+                .description("Topology trees evicted to stay within the maximum number of cached devices")
+                .register(meterRegistry);
+        Gauge.builder("topology.cache.weighted.size", topologyCache, TopologyCache::getWeightedSize)
+                .description("Devices held by all the cached topology trees")
+                .baseUnit("devices")
+                .register(meterRegistry);
+        return topologyCache;
+    }
+}
@@ -2,7 +2,10 @@ package com.alesmontaldo.network_controller.infrastructure.lock;
 
 import com.alesmontaldo.network_controller.domain.device.persistance.mongo_db.lock.TopologyLockDocument;
 import com.mongodb.client.result.DeleteResult;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Profile;
 import org.springframework.dao.DuplicateKeyException;
 import org.springframework.data.mongodb.core.MongoTemplate;
@@ -10,36 +13,137 @@ import org.springframework.data.mongodb.core.query.Criteria;
 import org.springframework.data.mongodb.core.query.Query;
 import org.springframework.stereotype.Service;
 
-import java.util.Date;
-import java.util.UUID;
+import java.time.Duration;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
 
 /**
  * Service for managing distributed locks in MongoDB.
  * Provides methods to acquire and release locks for topology operations.
  * Relies on MongoDB's TTL index for automatic expiration of locks.
+ * <p>
+ * When a wait timeout is configured, acquiring a lock held by someone else waits for its release
+ * instead of failing right away. Waiters are woken up as soon as a holder of the same JVM releases
+ * the lock, and poll MongoDB periodically for locks held by other nodes.
+ * <p>
+ * The time spent acquiring the locks, by outcome, and the time they are held are exposed as the
+ * topology.lock.acquire and topology.lock.held timers.
  */
 @Service
 @Profile("!in-memory")
 public class DistributedLockService {
     private final MongoTemplate mongoTemplate;
     private final int LOCK_TIMEOUT_SECONDS = 30;
-    
+    private final Duration waitTimeout;
+    private final Duration pollInterval;
+
+    // Local waiters, woken up when a lock they are waiting for is released by this JVM
+    private final ReentrantLock waitersLock = new ReentrantLock();
+    private final Map<String, Condition> releasedConditions = new HashMap<>();
+    private long releaseCount = 0; // guarded by waitersLock
+
+    private final Timer acquired;
+    private final Timer busy;
+    private final Timer interrupted;
+    private final Timer held;
+    // Acquisition time of the locks held by this JVM, by lock token
+    private final Map<String, Long> acquiredAtNanos = new ConcurrentHashMap<>();
+
     @Autowired
-    public DistributedLockService(MongoTemplate mongoTemplate) {
+    public DistributedLockService(MongoTemplate mongoTemplate,
+                                  @Value("${network-controller.topology-lock.wait-timeout:0ms}") Duration waitTimeout,
+                                  @Value("${network-controller.topology-lock.poll-interval:50ms}") Duration pollInterval,
+                                  MeterRegistry meterRegistry) {
         this.mongoTemplate = mongoTemplate;
+        this.waitTimeout = waitTimeout;
+        this.pollInterval = pollInterval;
+        this.acquired = acquireTimer("acquired", meterRegistry);
+        this.busy = acquireTimer("busy", meterRegistry);
+        this.interrupted = acquireTimer("interrupted", meterRegistry);
+        this.held = Timer.builder("topology.lock.held")
+                .description("Time the topology locks are held, from their acquisition to their release")
+                .register(meterRegistry);
     }
-    
+
+    private static Timer acquireTimer(String outcome, MeterRegistry meterRegistry) {
+        return Timer.builder("topology.lock.acquire")
+                .description("Time spent acquiring the topology locks, including the waits for busy locks")
+                .tag("outcome", outcome)
+                .register(meterRegistry);
+    }
+
     /**
-     * Tries to acquire a lock for the topology operations
-     * @return A unique lock token if successful, null if the lock couldn't be acquired
+     * Tries to acquire all the given locks, in their natural order to avoid deadlocks between callers.
+     * Either all the locks are acquired or none of them is.
+     * If a wait timeout is configured, waits up to that long for the locks to be released.
+     * @param lockIds The ids of the locks to acquire
+     * @return A unique lock token, shared by all the acquired locks, if successful, null otherwise
      */
-    public String acquireLock() {
+    public String acquireLocks(SortedSet<String> lockIds) {
         String lockToken = UUID.randomUUID().toString();
+        long start = System.nanoTime();
+        long deadline = start + waitTimeout.toNanos();
+
+        while (true) {
+            long releasesBeforeAttempt = currentReleaseCount();
+            List<String> acquiredLockIds = new ArrayList<>(lockIds.size());
+            String busyLockId = tryAcquireLocks(lockIds, lockToken, acquiredLockIds);
+            if (busyLockId == null) {
+                recordAcquisition(lockToken, acquired, start);
+                return lockToken;
+            }
+            // Rolling back the locks acquired by this attempt is not a release worth waking up for
+            if (releaseLocks(acquiredLockIds, lockToken)) {
+                releasesBeforeAttempt++;
+            }
+
+            long remainingNanos = deadline - System.nanoTime();
+            if (remainingNanos <= 0) {
+                recordAcquisition(null, busy, start);
+                return null;
+            }
+            try {
+                awaitRelease(busyLockId, releasesBeforeAttempt, Math.min(remainingNanos, pollInterval.toNanos()));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                recordAcquisition(null, interrupted, start);
+                return null;
+            }
+        }
+    }
+
+    private void recordAcquisition(String lockToken, Timer outcome, long startNanos) {
+        long now = System.nanoTime();
+        outcome.record(now - startNanos, TimeUnit.NANOSECONDS);
+        if (lockToken != null) {
+            acquiredAtNanos.put(lockToken, now);
+        }
+    }
+
+    /**
+     * Tries to acquire all the given locks once, stopping at the first busy one.
+     * @param acquiredLockIds Collects the ids of the acquired locks, which the caller must release on failure
+     * @return null if all the locks were acquired, the id of the first lock that couldn't be acquired otherwise
+     */
+    private String tryAcquireLocks(SortedSet<String> lockIds, String lockToken, List<String> acquiredLockIds) {
+        for (String lockId : lockIds) {
+            if (acquireLock(lockId, lockToken) == null) {
+                return lockId;
+            }
+            acquiredLockIds.add(lockId);
+        }
+        return null;
+    }
+
+    private String acquireLock(String lockId, String lockToken) {
         Date now = new Date();
         Date expiration = new Date(now.getTime() + (LOCK_TIMEOUT_SECONDS * 1000));
-        
-        TopologyLockDocument newLock = new TopologyLockDocument(lockToken, now, expiration);
-        
+
+        TopologyLockDocument newLock = new TopologyLockDocument(lockId, lockToken, now, expiration);
+
         try {
             // Try to insert the lock document - will fail if it already exists
             // MongoDB's TTL index will automatically remove expired locks
@@ -50,23 +154,84 @@ public class DistributedLockService {
             return null;
         }
     }
-    
+
     /**
-     * Releases the lock if the caller is the owner
-     * @param lockToken The token returned when the lock was acquired
-     * @return true if the lock was released, false otherwise
+     * Releases the given locks if the caller is their owner
+     * @param lockIds The ids of the locks to release
+     * @param lockToken The token returned when the locks were acquired
+     * @return true if at least one lock was released, false otherwise
      */
-    public boolean releaseLock(String lockToken) {
+    public boolean releaseLocks(Iterable<String> lockIds, String lockToken) {
         if (lockToken == null) {
             return false;
         }
-        
+        // Recorded even if the locks have already expired: as far as the caller knows, they were held until now
+        Long acquiredAt = acquiredAtNanos.remove(lockToken);
+        if (acquiredAt != null) {
+            held.record(System.nanoTime() - acquiredAt, TimeUnit.NANOSECONDS);
+        }
+
+        List<String> ids = new ArrayList<>();
+        lockIds.forEach(ids::add);
+        if (ids.isEmpty()) {
+            return false;
+        }
+
         Query query = Query.query(
-            Criteria.where("_id").is("TOPOLOGY_LOCK")
+            Criteria.where("_id").in(ids)
                    .and("owner").is(lockToken)
         );
-        
+
         DeleteResult result = mongoTemplate.remove(query, TopologyLockDocument.class);
-        return result.getDeletedCount() > 0;
+        if (result.getDeletedCount() > 0) {
+            signalRelease(ids);
+            return true;
+        }
+        return false;
+    }
+
+    private long currentReleaseCount() {
+        waitersLock.lock();
+        try {
+            return releaseCount;
+        } finally {
+            waitersLock.unlock();
+        }
+    }
+
+    /**
+     * Waits until the given lock is released by this JVM, or until the given time has elapsed.
+     * Returns immediately if any lock was released since the failed attempt, so no wake-up is missed.
+     * Relies on a j.u.c. lock rather than a monitor, so waiting virtual threads don't pin their carrier.
+     */
+    private void awaitRelease(String lockId, long releasesBeforeAttempt, long nanos) throws InterruptedException {
+        waitersLock.lock();
+        try {
+            if (releaseCount != releasesBeforeAttempt) {
+                return;
+            }
+            Condition released = releasedConditions.computeIfAbsent(lockId, id -> waitersLock.newCondition());
+            released.await(nanos, TimeUnit.NANOSECONDS);
+            if (!waitersLock.hasWaiters(released)) {
+                releasedConditions.remove(lockId);
+            }
+        } finally {
+            waitersLock.unlock();
+        }
+    }
+
+    private void signalRelease(List<String> lockIds) {
+        waitersLock.lock();
+        try {
+            releaseCount++;
+            for (String lockId : lockIds) {
+                Condition released = releasedConditions.get(lockId);
+                if (released != null) {
+                    released.signalAll();
+                }
+            }
+        } finally {
+            waitersLock.unlock();
+        }
     }
 }
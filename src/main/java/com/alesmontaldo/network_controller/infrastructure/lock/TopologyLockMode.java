@@ -0,0 +1,20 @@
+package com.alesmontaldo.network_controller.infrastructure.lock;
+
+/**
+ * Granularity of the distributed locks taken while modifying the network topology.
+ * All the nodes of a cluster must use the same mode.
+ */
+public enum TopologyLockMode {
+
+    /**
+     * A single lock document serializes every topology modification in the cluster.
+     */
+    GLOBAL,
+
+    /**
+     * One lock document for each tree affected by the modification, identified by the MAC address of its root.
+     * Modifications of disjoint trees proceed in parallel. Since a cycle can only be created when a device
+     * is attached below one of its own descendants, i.e. within its own tree, cycle detection stays correct.
+     */
+    TREE
+}
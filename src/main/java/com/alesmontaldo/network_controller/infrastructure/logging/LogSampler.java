@@ -0,0 +1,29 @@
+package com.alesmontaldo.network_controller.infrastructure.logging;
+
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Decides which requests log their details, so that the per-request events of hot paths stay affordable at high rates.
+ * Each call is sampled independently, without any shared state between threads.
+ */
+public class LogSampler {
+
+    private final double rate;
+
+    /**
+     * @param rate The fraction of the requests to log, between 0 (none) and 1 (all)
+     */
+    public LogSampler(double rate) {
+        if (rate < 0 || rate > 1) {
+            throw new IllegalArgumentException("The log sample rate must be between 0 and 1: " + rate);
+        }
+        this.rate = rate;
+    }
+
+    /**
+     * @return Whether the current request is part of the sample
+     */
+    public boolean sample() {
+        return rate >= 1 || (rate > 0 && ThreadLocalRandom.current().nextDouble() < rate);
+    }
+}
@@ -2,6 +2,7 @@ package com.alesmontaldo.network_controller.infrastructure.persistence.in_memory
 
 import org.springframework.boot.autoconfigure.EnableAutoConfiguration;
 import org.springframework.boot.autoconfigure.data.mongo.MongoDataAutoConfiguration;
+import org.springframework.boot.autoconfigure.data.mongo.MongoReactiveDataAutoConfiguration;
 import org.springframework.boot.autoconfigure.data.mongo.MongoReactiveRepositoriesAutoConfiguration;
 import org.springframework.boot.autoconfigure.data.mongo.MongoRepositoriesAutoConfiguration;
 import org.springframework.boot.autoconfigure.mongo.MongoAutoConfiguration;
@@ -16,6 +17,7 @@ import org.springframework.context.annotation.Profile;
         MongoDataAutoConfiguration.class,
         MongoRepositoriesAutoConfiguration.class,
         MongoReactiveAutoConfiguration.class,
+        MongoReactiveDataAutoConfiguration.class,
         MongoReactiveRepositoriesAutoConfiguration.class
 })
 public class InMemoryConfig {}
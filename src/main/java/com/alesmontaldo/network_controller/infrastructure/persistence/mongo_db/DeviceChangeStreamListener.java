@@ -0,0 +1,257 @@
+package com.alesmontaldo.network_controller.infrastructure.persistence.mongo_db;
+
+import com.alesmontaldo.network_controller.application.TopologyCache;
+import com.alesmontaldo.network_controller.codegen.types.Device;
+import com.alesmontaldo.network_controller.domain.device.MacAddress;
+import com.alesmontaldo.network_controller.domain.device.persistance.mongo_db.DeviceDocument;
+import com.alesmontaldo.network_controller.domain.device.persistance.mongo_db.DeviceMapper;
+import com.alesmontaldo.network_controller.domain.device.persistance.mongo_db.TopologyReplica;
+import com.alesmontaldo.network_controller.domain.device.persistance.mongo_db.TopologyReplicaMode;
+import com.mongodb.MongoException;
+import com.mongodb.client.ChangeStreamIterable;
+import com.mongodb.client.MongoChangeStreamCursor;
+import com.mongodb.client.model.changestream.ChangeStreamDocument;
+import com.mongodb.client.model.changestream.FullDocument;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.stream.Stream;
+import org.bson.BsonDocument;
+import org.bson.Document;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.SmartLifecycle;
+import org.springframework.context.annotation.Profile;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.stereotype.Component;
+
+/**
+ * Keeps the local {@link TopologyReplica} aligned with the devices collection, whichever node modifies it,
+ * by following the MongoDB change stream of the collection ({@link TopologyReplicaMode#CHANGE_STREAM} mode). Every change also invalidates the affected
+ * trees of the {@link TopologyCache}.
+ * <p>
+ * The change stream is opened before the collection is loaded, so no change made during the load is missed:
+ * replaying changes already loaded is harmless. When a snapshot file is configured the replica is saved
+ * on shutdown together with the resume token of the last applied change, and a restart only replays
+ * the changes made in the meantime, as long as they are still in the oplog.
+ * <p>
+ * Change streams require MongoDB to run as a replica set.
+ */
+@Component
+@Profile("!in-memory")
+@ConditionalOnProperty(name = "network-controller.topology-replica.mode", havingValue = "CHANGE_STREAM")
+public class DeviceChangeStreamListener implements SmartLifecycle {
+
+    private static final Logger log = LoggerFactory.getLogger(DeviceChangeStreamListener.class);
+
+    // The resume token is older than the oldest entry of the oplog
+    private static final int CHANGE_STREAM_HISTORY_LOST = 286;
+    private static final Duration RECONNECT_DELAY = Duration.ofSeconds(1);
+    private static final Duration STOP_TIMEOUT = Duration.ofSeconds(5);
+
+    private final MongoTemplate mongoTemplate;
+    private final DeviceMapper deviceMapper;
+    private final TopologyReplica replica;
+    private final TopologyCache topologyCache;
+    private final Path snapshotFile;
+
+    private volatile boolean running = false;
+    private volatile MongoChangeStreamCursor<ChangeStreamDocument<Document>> cursor;
+    private Thread listenerThread;
+    // Written by the listener thread only, read by stop() once the thread is over
+    private BsonDocument resumeToken;
+
+    public DeviceChangeStreamListener(MongoTemplate mongoTemplate,
+                                      DeviceMapper deviceMapper,
+                                      TopologyReplica replica,
+                                      TopologyCache topologyCache,
+                                      @Value("${network-controller.topology-replica.snapshot-file:}") String snapshotFile) {
+        this.mongoTemplate = mongoTemplate;
+        this.deviceMapper = deviceMapper;
+        this.replica = replica;
+        this.topologyCache = topologyCache;
+        this.snapshotFile = snapshotFile.isBlank() ? null : Path.of(snapshotFile);
+    }
+
+    @Override
+    public void start() {
+        if (snapshotFile != null) {
+            try {
+                TopologyReplicaSnapshot.read(snapshotFile).ifPresent(snapshot -> {
+                    replica.load(snapshot.devices());
+                    resumeToken = snapshot.resumeToken();
+                    log.info("Loaded {} devices in the topology replica from {}", snapshot.devices().size(), snapshotFile);
+                });
+            } catch (IOException e) {
+                log.warn("Could not read the topology snapshot, all the devices will be loaded from MongoDB", e);
+            }
+        }
+
+        running = true;
+        listenerThread = Thread.ofPlatform().name("devices-change-stream").daemon().start(this::listen);
+    }
+
+    @Override
+    public void stop() {
+        running = false;
+        MongoChangeStreamCursor<ChangeStreamDocument<Document>> openCursor = cursor;
+        if (openCursor != null) {
+            openCursor.close();
+        }
+        try {
+            if (!listenerThread.join(STOP_TIMEOUT)) {
+                log.warn("The change stream listener did not stop in time, the topology snapshot is not saved");
+                return;
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return;
+        }
+
+        if (snapshotFile != null && replica.isReady() && resumeToken != null) {
+            try {
+                TopologyReplicaSnapshot.write(snapshotFile, resumeToken, replica.findAll());
+                log.info("Saved the topology replica to {}", snapshotFile);
+            } catch (IOException e) {
+                log.warn("Could not save the topology snapshot", e);
+            }
+        }
+    }
+
+    @Override
+    public boolean isRunning() {
+        return running;
+    }
+
+    private void listen() {
+        while (running) {
+            try {
+                followChangeStream();
+            } catch (MongoException e) {
+                if (!running) {
+                    break;
+                }
+                if (e.getCode() == CHANGE_STREAM_HISTORY_LOST) {
+                    log.warn("Changes to the devices were lost, reloading the topology replica");
+                    resumeToken = null;
+                    replica.invalidate();
+                } else {
+                    log.warn("Devices change stream interrupted, reconnecting", e);
+                    sleep(RECONNECT_DELAY);
+                }
+            } catch (RuntimeException e) {
+                if (!running) {
+                    break;
+                }
+                log.error("Unexpected error following the devices change stream, reconnecting", e);
+                sleep(RECONNECT_DELAY);
+            }
+        }
+    }
+
+    /**
+     * Follows the change stream until the listener is stopped, or until the stream is invalidated.
+     */
+    private void followChangeStream() {
+        ChangeStreamIterable<Document> changeStream = mongoTemplate.getCollection("devices")
+                .watch()
+                .fullDocument(FullDocument.UPDATE_LOOKUP);
+        if (resumeToken != null) {
+            changeStream = changeStream.resumeAfter(resumeToken);
+        }
+
+        try (MongoChangeStreamCursor<ChangeStreamDocument<Document>> openCursor = changeStream.cursor()) {
+            cursor = openCursor;
+            if (resumeToken == null) {
+                resumeToken = openCursor.getResumeToken();
+                reload();
+            }
+
+            while (running) {
+                ChangeStreamDocument<Document> change = openCursor.tryNext();
+                if (change == null) {
+                    // No change within the await time: keep the token moving forward anyway
+                    if (openCursor.getResumeToken() != null) {
+                        resumeToken = openCursor.getResumeToken();
+                    }
+                    continue;
+                }
+                if (!apply(change)) {
+                    // The stream can't be followed anymore (collection dropped or renamed): start over
+                    resumeToken = null;
+                    replica.invalidate();
+                    return;
+                }
+                resumeToken = change.getResumeToken();
+            }
+        } finally {
+            cursor = null;
+        }
+    }
+
+    private void reload() {
+        List<Device> devices;
+        try (Stream<DeviceDocument> documents = mongoTemplate.stream(new Query(), DeviceDocument.class)) {
+            devices = documents.map(deviceMapper::toDevice).toList();
+        }
+        replica.load(devices);
+        topologyCache.invalidateAll();
+        log.info("Loaded {} devices in the topology replica from MongoDB", devices.size());
+    }
+
+    /**
+     * @return false if the change invalidates the stream
+     */
+    private boolean apply(ChangeStreamDocument<Document> change) {
+        switch (change.getOperationType()) {
+            case INSERT, UPDATE, REPLACE -> {
+                // Null if the document was deleted in the meantime: the deletion follows
+                if (change.getFullDocument() != null) {
+                    DeviceDocument document = mongoTemplate.getConverter().read(DeviceDocument.class, change.getFullDocument());
+                    Device device = deviceMapper.toDevice(document);
+                    Set<MacAddress> affectedMacs = affectedMacs(device.getMacAddress());
+                    replica.apply(device);
+                    affectedMacs.addAll(replica.findAncestors(device.getMacAddress()));
+                    topologyCache.invalidate(affectedMacs);
+                }
+                return true;
+            }
+            case DELETE -> {
+                MacAddress mac = new MacAddress(change.getDocumentKey().getString("_id").getValue());
+                Set<MacAddress> affectedMacs = affectedMacs(mac);
+                replica.remove(mac);
+                topologyCache.invalidate(affectedMacs);
+                return true;
+            }
+            case DROP, RENAME, DROP_DATABASE, INVALIDATE -> {
+                return false;
+            }
+            default -> {
+                return true;
+            }
+        }
+    }
+
+    /**
+     * @return The devices whose subtree contains the given device, itself included
+     */
+    private Set<MacAddress> affectedMacs(MacAddress mac) {
+        Set<MacAddress> affectedMacs = new HashSet<>(replica.findAncestors(mac));
+        affectedMacs.add(mac);
+        return affectedMacs;
+    }
+
+    private static void sleep(Duration duration) {
+        try {
+            Thread.sleep(duration);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
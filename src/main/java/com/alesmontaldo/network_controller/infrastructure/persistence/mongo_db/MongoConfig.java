@@ -2,6 +2,8 @@ package com.alesmontaldo.network_controller.infrastructure.persistence.mongo_db;
 
 import com.alesmontaldo.network_controller.domain.device.persistance.mongo_db.converter.MacAddressToStringConverter;
 import com.alesmontaldo.network_controller.domain.device.persistance.mongo_db.converter.StringToMacAddressConverter;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.mongo.MongoClientSettingsBuilderCustomizer;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.context.annotation.Profile;
@@ -42,4 +44,15 @@ public class MongoConfig {
                 macAddressToStringConverter
         ));
     }
+
+    /**
+     * Sizes the connection pool of the MongoDB client. With virtual threads the number of concurrent requests
+     * is no longer bounded by the Tomcat thread pool, so the connection pool becomes the limit on concurrent queries:
+     * the other requests wait for a connection, which doesn't block any carrier thread.
+     */
+    @Bean
+    public MongoClientSettingsBuilderCustomizer connectionPoolCustomizer(
+            @Value("${network-controller.mongodb.max-pool-size:100}") int maxPoolSize) {
+        return settings -> settings.applyToConnectionPoolSettings(pool -> pool.maxSize(maxPoolSize));
+    }
 }
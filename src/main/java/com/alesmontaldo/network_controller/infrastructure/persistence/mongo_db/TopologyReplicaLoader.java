@@ -0,0 +1,72 @@
+package com.alesmontaldo.network_controller.infrastructure.persistence.mongo_db;
+
+import com.alesmontaldo.network_controller.codegen.types.Device;
+import com.alesmontaldo.network_controller.domain.device.persistance.mongo_db.DeviceDocument;
+import com.alesmontaldo.network_controller.domain.device.persistance.mongo_db.DeviceMapper;
+import com.alesmontaldo.network_controller.domain.device.persistance.mongo_db.TopologyReplica;
+import com.alesmontaldo.network_controller.domain.device.persistance.mongo_db.TopologyReplicaMode;
+import java.util.List;
+import java.util.stream.Stream;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.SmartLifecycle;
+import org.springframework.context.annotation.Profile;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.stereotype.Component;
+
+/**
+ * Loads the whole devices collection in the {@link TopologyReplica} at startup, in {@link TopologyReplicaMode#LOCAL} mode.
+ * From then on the replica is kept up to date by the repository with the devices it saves.
+ * <p>
+ * The load completes before the web server starts, so no device can be saved while it's running.
+ */
+@Component
+@Profile("!in-memory")
+@ConditionalOnProperty(name = "network-controller.topology-replica.mode", havingValue = "LOCAL")
+public class TopologyReplicaLoader implements SmartLifecycle {
+
+    private static final Logger log = LoggerFactory.getLogger(TopologyReplicaLoader.class);
+
+    private final MongoTemplate mongoTemplate;
+    private final DeviceMapper deviceMapper;
+    private final TopologyReplica replica;
+
+    private volatile boolean running = false;
+
+    public TopologyReplicaLoader(MongoTemplate mongoTemplate, DeviceMapper deviceMapper, TopologyReplica replica) {
+        this.mongoTemplate = mongoTemplate;
+        this.deviceMapper = deviceMapper;
+        this.replica = replica;
+    }
+
+    @Override
+    public void start() {
+        List<Device> devices;
+        try (Stream<DeviceDocument> documents = mongoTemplate.stream(new Query(), DeviceDocument.class)) {
+            devices = documents.map(deviceMapper::toDevice).toList();
+        }
+        replica.load(devices);
+        running = true;
+        log.info("Loaded {} devices in the topology replica from MongoDB", devices.size());
+    }
+
+    @Override
+    public void stop() {
+        running = false;
+    }
+
+    @Override
+    public boolean isRunning() {
+        return running;
+    }
+
+    /**
+     * Lower than the phase of the web server, which starts accepting requests afterwards.
+     */
+    @Override
+    public int getPhase() {
+        return 0;
+    }
+}
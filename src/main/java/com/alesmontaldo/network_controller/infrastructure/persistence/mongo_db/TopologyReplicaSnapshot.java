@@ -0,0 +1,85 @@
+package com.alesmontaldo.network_controller.infrastructure.persistence.mongo_db;
+
+import com.alesmontaldo.network_controller.codegen.types.*;
+import com.alesmontaldo.network_controller.domain.device.MacAddress;
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Optional;
+import org.bson.BsonDocument;
+
+/**
+ * Local file holding a copy of the devices collection, together with the change stream resume token it is aligned with.
+ * The first line holds the resume token as JSON, then every line holds a device: its MAC address,
+ * the MAC address of its uplink (or {@value #NO_UPLINK}) and its type, separated by spaces.
+ *
+ * @param resumeToken The resume token of the last change applied to the devices
+ * @param devices The devices, without downlink devices
+ */
+record TopologyReplicaSnapshot(BsonDocument resumeToken, List<Device> devices) {
+
+    private static final String NO_UPLINK = "-";
+
+    /**
+     * @return The snapshot stored in the given file, or empty if there is none
+     */
+    static Optional<TopologyReplicaSnapshot> read(Path file) throws IOException {
+        if (!Files.exists(file)) {
+            return Optional.empty();
+        }
+
+        try (BufferedReader reader = Files.newBufferedReader(file, StandardCharsets.US_ASCII)) {
+            String tokenLine = reader.readLine();
+            if (tokenLine == null) {
+                return Optional.empty();
+            }
+            BsonDocument resumeToken = BsonDocument.parse(tokenLine);
+
+            List<Device> devices = new ArrayList<>();
+            String line;
+            while ((line = reader.readLine()) != null) {
+                String[] fields = line.split(" ");
+                if (fields.length != 3) {
+                    throw new IOException("Invalid device in topology snapshot: " + line);
+                }
+                MacAddress mac = new MacAddress(fields[0]);
+                MacAddress uplinkMac = NO_UPLINK.equals(fields[1]) ? null : new MacAddress(fields[1]);
+                devices.add(switch (DeviceType.valueOf(fields[2])) {
+                    case GATEWAY -> new Gateway(mac, uplinkMac, DeviceType.GATEWAY, List.of());
+                    case SWITCH -> new Switch(mac, uplinkMac, DeviceType.SWITCH, List.of());
+                    case ACCESS_POINT -> new AccessPoint(mac, uplinkMac, DeviceType.ACCESS_POINT, List.of());
+                });
+            }
+            return Optional.of(new TopologyReplicaSnapshot(resumeToken, devices));
+        } catch (IllegalArgumentException e) {
+            throw new IOException("Invalid topology snapshot: " + file, e);
+        }
+    }
+
+    /**
+     * Writes the snapshot to a temporary file first, then moves it in place, so that a crash can't leave half a snapshot.
+     */
+    static void write(Path file, BsonDocument resumeToken, Collection<Device> devices) throws IOException {
+        Path temporaryFile = file.resolveSibling(file.getFileName() + ".tmp");
+        try (BufferedWriter writer = Files.newBufferedWriter(temporaryFile, StandardCharsets.US_ASCII)) {
+            writer.write(resumeToken.toJson());
+            writer.newLine();
+            for (Device device : devices) {
+                writer.write(device.getMacAddress().getValue());
+                writer.write(' ');
+                writer.write(device.getUplinkMacAddress() == null ? NO_UPLINK : device.getUplinkMacAddress().getValue());
+                writer.write(' ');
+                writer.write(device.getDeviceType().name());
+                writer.newLine();
+            }
+        }
+        Files.move(temporaryFile, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+}
@@ -0,0 +1,72 @@
+package com.alesmontaldo.network_controller.user_interface.configuration;
+
+import graphql.TypeResolutionEnvironment;
+import graphql.schema.GraphQLObjectType;
+import graphql.schema.GraphQLSchema;
+import graphql.schema.TypeResolver;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Resolves the object type of the values of unions and interfaces from their class, with a single map lookup.
+ * The class to object type map is built once per schema, on the first resolution, so no lookup by name
+ * and no allocation happens while resolving the elements of large lists.
+ */
+public class ClassTypeResolver implements TypeResolver {
+
+    private record Registry(GraphQLSchema schema, Map<Class<?>, GraphQLObjectType> objectTypes) {
+    }
+
+    private final Map<Class<?>, String> typeNames;
+    private volatile Registry registry;
+
+    /**
+     * @param typeNames The name of the object type of each class resolved through this resolver
+     */
+    public ClassTypeResolver(Map<Class<?>, String> typeNames) {
+        this.typeNames = Map.copyOf(typeNames);
+    }
+
+    @Override
+    public GraphQLObjectType getType(TypeResolutionEnvironment env) {
+        return resolve(env.getObject(), env.getSchema());
+    }
+
+    /**
+     * @param value The value of a union or interface field
+     * @param schema The schema being executed
+     * @return The object type of the value, or null if its class is not registered
+     */
+    public GraphQLObjectType resolve(Object value, GraphQLSchema schema) {
+        Registry current = registry;
+        if (current == null || current.schema() != schema) {
+            current = buildRegistry(schema);
+            registry = current;
+        }
+
+        GraphQLObjectType objectType = current.objectTypes().get(value.getClass());
+        return objectType != null ? objectType : resolveSubclass(value, current);
+    }
+
+    private Registry buildRegistry(GraphQLSchema schema) {
+        Map<Class<?>, GraphQLObjectType> objectTypes = new HashMap<>();
+        typeNames.forEach((type, typeName) -> {
+            GraphQLObjectType objectType = schema.getObjectType(typeName);
+            if (objectType == null) {
+                throw new IllegalStateException("The schema doesn't define the object type " + typeName + " of " + type.getName());
+            }
+            objectTypes.put(type, objectType);
+        });
+        return new Registry(schema, objectTypes);
+    }
+
+    // Slow path, for values whose class is a subclass of a registered one
+    private static GraphQLObjectType resolveSubclass(Object value, Registry registry) {
+        for (Map.Entry<Class<?>, GraphQLObjectType> entry : registry.objectTypes().entrySet()) {
+            if (entry.getKey().isInstance(value)) {
+                return entry.getValue();
+            }
+        }
+        return null;
+    }
+}
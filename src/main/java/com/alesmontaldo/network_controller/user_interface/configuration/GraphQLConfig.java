@@ -2,16 +2,27 @@ package com.alesmontaldo.network_controller.user_interface.configuration;
 
 import com.alesmontaldo.network_controller.codegen.types.*;
 import com.alesmontaldo.network_controller.domain.device.MacAddress;
+import com.alesmontaldo.network_controller.user_interface.execution.CachingPreparsedDocumentProvider;
+import com.alesmontaldo.network_controller.user_interface.execution.PreparsedDocumentCache;
 import com.alesmontaldo.network_controller.user_interface.scalar.MacAddressScalar;
+import graphql.execution.preparsed.PreparsedDocumentProvider;
 import graphql.scalars.ExtendedScalars;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
 import org.springframework.aot.hint.MemberCategory;
 import org.springframework.aot.hint.RuntimeHints;
 import org.springframework.aot.hint.RuntimeHintsRegistrar;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.graphql.GraphQlSourceBuilderCustomizer;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.context.annotation.ImportRuntimeHints;
 import org.springframework.graphql.execution.RuntimeWiringConfigurer;
 
+import java.util.List;
+import java.util.Map;
+
 /**
  * Configuration class for GraphQL setup.
  * Registers custom scalars, type resolvers, and other GraphQL configurations.
@@ -20,6 +31,21 @@ import org.springframework.graphql.execution.RuntimeWiringConfigurer;
 @ImportRuntimeHints(GraphQLConfig.GraphQLRuntimeHints.class)
 public class GraphQLConfig {
 
+    // Object types of the values of the unions and interfaces of the schema, by class
+    static final Map<Class<?>, String> OBJECT_TYPE_NAMES = Map.of(
+            Gateway.class, "Gateway",
+            Switch.class, "Switch",
+            AccessPoint.class, "AccessPoint",
+            DeviceResultView.class, "DeviceResultView",
+            DeviceConnection.class, "DeviceConnection",
+            JsonResult.class, "JsonResult",
+            ValidationError.class, "ValidationError",
+            ServerError.class, "ServerError");
+
+    // Unions and interfaces of the schema
+    static final List<String> ABSTRACT_TYPE_NAMES = List.of(
+            "AddDeviceResult", "GetDeviceResult", "DeviceTopologyResult", "DevicesConnectionResult", "Device", "Error");
+
     /**
      * Configures the RuntimeWiring to include custom scalars and type resolvers.
      * 
@@ -32,52 +58,48 @@ public class GraphQLConfig {
             wiringBuilder.scalar(MacAddressScalar.MAC_ADDRESS);
             wiringBuilder.scalar(ExtendedScalars.Json);
             
-            // Register type resolvers for the union types
-            wiringBuilder.type("AddDeviceResult", typeConfig -> typeConfig
-                    .typeResolver(env -> {
-                        Object result = env.getObject();
-                        if (result instanceof Gateway) {
-                            return env.getSchema().getObjectType("Gateway");
-                        } else if (result instanceof Switch) {
-                            return env.getSchema().getObjectType("Switch");
-                        } else if (result instanceof AccessPoint) {
-                            return env.getSchema().getObjectType("AccessPoint");
-                        } else if (result instanceof ValidationError) {
-                            return env.getSchema().getObjectType("ValidationError");
-                        } else if (result instanceof ServerError) {
-                            return env.getSchema().getObjectType("ServerError");
-                        }
-                        return null;
-                    }));
-
-            wiringBuilder.type("GetDeviceResult", typeConfig -> typeConfig
-                    .typeResolver(env -> {
-                        Object result = env.getObject();
-                        if (result instanceof DeviceResultView) {
-                            return env.getSchema().getObjectType("DeviceResultView");
-                        } else if (result instanceof ValidationError) {
-                            return env.getSchema().getObjectType("ValidationError");
-                        } else if (result instanceof ServerError) {
-                            return env.getSchema().getObjectType("ServerError");
-                        }
-                        return null;
-                    }));
+            // Register a single type resolver, resolving by class, for all the union and interface types
+            ClassTypeResolver typeResolver = new ClassTypeResolver(OBJECT_TYPE_NAMES);
+            for (String abstractTypeName : ABSTRACT_TYPE_NAMES) {
+                wiringBuilder.type(abstractTypeName, typeConfig -> typeConfig.typeResolver(typeResolver));
+            }
+        };
+    }
 
-            wiringBuilder.type("DeviceTopologyResult", typeConfig -> typeConfig
-                    .typeResolver(env -> {
-                        Object result = env.getObject();
-                        if (result instanceof JsonResult) {
-                            return env.getSchema().getObjectType("JsonResult");
-                        } else if (result instanceof ValidationError) {
-                            return env.getSchema().getObjectType("ValidationError");
-                        } else if (result instanceof ServerError) {
-                            return env.getSchema().getObjectType("ServerError");
-                        }
-                        return null;
-                    }));
+    /**
+     * Caches the parsed and validated documents of the requests and enables Automatic Persisted Queries,
+     * unless the cache size is 0. The hits, misses and evictions of the cache are exposed as metrics.
+     */
+    @Bean
+    public GraphQlSourceBuilderCustomizer preparsedDocumentCacheCustomizer(
+            @Value("${network-controller.graphql.document-cache.max-entries:1000}") int maxEntries,
+            MeterRegistry meterRegistry) {
+        return builder -> {
+            if (maxEntries > 0) {
+                PreparsedDocumentCache documentCache = new PreparsedDocumentCache(maxEntries);
+                registerDocumentCacheMetrics(documentCache, meterRegistry);
+                PreparsedDocumentProvider documentProvider = new CachingPreparsedDocumentProvider(documentCache);
+                builder.configureGraphQl(graphQlBuilder -> graphQlBuilder.preparsedDocumentProvider(documentProvider));
+            }
         };
     }
 
+    private static void registerDocumentCacheMetrics(PreparsedDocumentCache documentCache, MeterRegistry meterRegistry) {
+        FunctionCounter.builder("graphql.document.cache.hits", documentCache, PreparsedDocumentCache::getHits)
+                .description("GraphQL documents served from the cache, skipping parsing and validation")
+                .register(meterRegistry);
+        FunctionCounter.builder("graphql.document.cache.misses", documentCache, PreparsedDocumentCache::getMisses)
+                .description("GraphQL documents parsed and validated on a cache miss")
+                .register(meterRegistry);
+        FunctionCounter.builder("graphql.document.cache.evictions", documentCache, PreparsedDocumentCache::getEvictions)
+                .description("GraphQL documents evicted to stay within the maximum number of cached documents")
+                .register(meterRegistry);
+        Gauge.builder("graphql.document.cache.size", documentCache, PreparsedDocumentCache::getSize)
+                .description("GraphQL documents held by the cache")
+                .baseUnit("documents")
+                .register(meterRegistry);
+    }
+
     // Hints for types are required for native java compilation
     static class GraphQLRuntimeHints implements RuntimeHintsRegistrar {
         @Override
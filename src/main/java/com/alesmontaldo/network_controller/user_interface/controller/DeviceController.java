@@ -1,49 +1,85 @@
 package com.alesmontaldo.network_controller.user_interface.controller;
 
 import com.alesmontaldo.network_controller.application.DeviceService;
+import com.alesmontaldo.network_controller.application.ReactiveDeviceService;
 import com.alesmontaldo.network_controller.codegen.types.*;
 import com.alesmontaldo.network_controller.domain.device.MacAddress;
+import com.alesmontaldo.network_controller.infrastructure.logging.LogSampler;
+import graphql.schema.DataFetchingFieldSelectionSet;
 import jakarta.validation.ValidationException;
 import java.util.ConcurrentModificationException;
 import java.util.List;
-import org.apache.commons.logging.Log;
-import org.apache.commons.logging.LogFactory;
+import java.util.Set;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.springframework.graphql.data.method.annotation.*;
 import org.springframework.stereotype.Controller;
+import reactor.core.publisher.Mono;
 
 @Controller
 public class DeviceController {
 
-    private static final Log log = LogFactory.getLog(DeviceController.class);
+    private static final Logger log = LoggerFactory.getLogger(DeviceController.class);
+    private static final Set<String> DEVICE_TYPE_NAMES = Set.of("Gateway", "Switch", "AccessPoint");
 
     private final DeviceService deviceService;
+    private final ReactiveDeviceService reactiveDeviceService;
+    private final LogSampler requestLogSampler;
 
-    public DeviceController(DeviceService deviceService) {
+    public DeviceController(DeviceService deviceService, ReactiveDeviceService reactiveDeviceService, LogSampler requestLogSampler) {
         this.deviceService = deviceService;
+        this.reactiveDeviceService = reactiveDeviceService;
+        this.requestLogSampler = requestLogSampler;
     }
 
+    /**
+     * Returns the view of the device, unless the query selects fields of the device types:
+     * the device itself is returned then, and its downlinkDevices are resolved by {@link DownlinkDevicesController}.
+     */
     @QueryMapping
-    public GetDeviceResult getDevice(@Argument MacAddress macAddress) {
+    public GetDeviceResult getDevice(@Argument MacAddress macAddress, DataFetchingFieldSelectionSet selectionSet) {
         try {
-            log.info("Finding device with mac address: " + macAddress);
-            Device device = deviceService.getDeviceByMac(macAddress);
-            return new DeviceResultView(device.getMacAddress(), device.getDeviceType());
+            if (requestLogSampler.sample()) {
+                log.atDebug().addKeyValue("mac", macAddress).log("getDevice {}", macAddress);
+            }
+            if (selectsDeviceFields(selectionSet)) {
+                return (GetDeviceResult) deviceService.getDeviceByMac(macAddress);
+            }
+            return deviceService.getDeviceView(macAddress);
         } catch (ValidationException e) {
-            log.warn("Validation error when getting device: " + e.getMessage());
+            if (requestLogSampler.sample()) {
+                log.warn("Validation error when getting device: {}", e.getMessage());
+            }
             return new ValidationError(e.getMessage());
         } catch (Exception e) {
-            log.error("Unexpected error when getting device for mac address:" + macAddress);
+            log.error("Unexpected error when getting device for mac address: {}", macAddress, e);
             return new ServerError("An unexpected error occurred: " + e.getMessage(), "INTERNAL_SERVER_ERROR");
         }
     }
 
     @QueryMapping
-    public List<? extends GetDeviceResult> allDevicesSorted() {
+    public Mono<List<GetDeviceResult>> allDevicesSorted() {
+        return reactiveDeviceService.getAllDevicesSorted()
+                .cast(GetDeviceResult.class)
+                .collectList()
+                .onErrorResume(e -> {
+                    log.error("Unexpected error when getting all devices sorted", e);
+                    return Mono.just(List.of(new ServerError("An unexpected error occurred: " + e.getMessage(), "INTERNAL_SERVER_ERROR")));
+                });
+    }
+
+    @QueryMapping
+    public DevicesConnectionResult devicesConnection(@Argument int first, @Argument String after, @Argument DeviceType deviceType) {
         try {
-            return deviceService.getAllDevicesSorted();
+            return deviceService.getDevicesPage(first, after, deviceType);
+        } catch (ValidationException e) {
+            if (requestLogSampler.sample()) {
+                log.warn("Validation error when getting a page of devices: {}", e.getMessage());
+            }
+            return new ValidationError(e.getMessage());
         } catch (Exception e) {
-            log.error("Unexpected error when getting all devices sorted", e);
-            return List.of(new ServerError("An unexpected error occurred: " + e.getMessage(), "INTERNAL_SERVER_ERROR"));
+            log.error("Unexpected error when getting a page of devices", e);
+            return new ServerError("An unexpected error occurred: " + e.getMessage(), "INTERNAL_SERVER_ERROR");
         }
     }
 
@@ -52,7 +88,7 @@ public class DeviceController {
         try {
             return (AddDeviceResult) deviceService.addDevice(deviceInput.getMacAddress(), deviceInput.getUplinkMacAddress(), deviceInput.getDeviceType());
         } catch (ValidationException e) {
-            log.warn("Validation error when adding device: " + e.getMessage());
+            log.warn("Validation error when adding device: {}", e.getMessage());
             return new ValidationError(e.getMessage());
         } catch (ConcurrentModificationException e) {
             log.error("Concurrent modification error when adding device", e);
@@ -63,27 +99,55 @@ public class DeviceController {
         }
     }
 
-    @QueryMapping
-    public DeviceTopologyResult fullTopology() {
+    @MutationMapping
+    public List<? extends AddDeviceResult> addDevices(@Argument("inputs") List<DeviceInput> deviceInputs) {
         try {
-            return new JsonResult(deviceService.getFullTopology());
+            return deviceService.addDevices(deviceInputs).stream()
+                    .map(device -> (AddDeviceResult) device)
+                    .toList();
+        } catch (ValidationException e) {
+            log.warn("Validation error when adding devices: {}", e.getMessage());
+            return List.of(new ValidationError(e.getMessage()));
+        } catch (ConcurrentModificationException e) {
+            log.error("Concurrent modification error when adding devices", e);
+            return List.of(new ServerError("Network topology is currently being modified. Please try again later.", "CONCURRENT_MODIFICATION"));
         } catch (Exception e) {
-            log.error("Error retrieving full topology", e);
-            return new ServerError("Failed to retrieve network topology: " + e.getMessage(), "INTERNAL_SERVER_ERROR");
+            log.error("Unexpected error when adding devices", e);
+            return List.of(new ServerError("An unexpected error occurred: " + e.getMessage(), "INTERNAL_SERVER_ERROR"));
         }
     }
 
     @QueryMapping
-    public DeviceTopologyResult deviceTopology(@Argument MacAddress macAddress) {
-        try {
-            Device device = deviceService.getSubtree(macAddress);
-            return new JsonResult(deviceService.buildSimplifiedTopology(device));
-        } catch (ValidationException e) {
-            log.warn("Validation error when getting device topology: " + e.getMessage());
-            return new ValidationError(e.getMessage());
-        } catch (Exception e) {
-            log.error("Unexpected error when getting device topology for mac address:" + macAddress);
-            return new ServerError("An unexpected error occurred: " + e.getMessage(), "INTERNAL_SERVER_ERROR");
-        }
+    public Mono<DeviceTopologyResult> fullTopology() {
+        return reactiveDeviceService.getFullTopology()
+                .collectList()
+                .<DeviceTopologyResult>map(JsonResult::new)
+                .onErrorResume(e -> {
+                    log.error("Error retrieving full topology", e);
+                    return Mono.just(new ServerError("Failed to retrieve network topology: " + e.getMessage(), "INTERNAL_SERVER_ERROR"));
+                });
+    }
+
+    @QueryMapping
+    public Mono<DeviceTopologyResult> deviceTopology(@Argument MacAddress macAddress, @Argument Integer maxDepth,
+                                                     @Argument List<DeviceType> deviceTypes) {
+        return reactiveDeviceService.getSubtreeTopology(macAddress, maxDepth, deviceTypes)
+                .<DeviceTopologyResult>map(JsonResult::new)
+                .onErrorResume(ValidationException.class, e -> {
+                    if (requestLogSampler.sample()) {
+                        log.warn("Validation error when getting device topology: {}", e.getMessage());
+                    }
+                    return Mono.just(new ValidationError(e.getMessage()));
+                })
+                .onErrorResume(e -> {
+                    log.error("Unexpected error when getting device topology for mac address: {}", macAddress, e);
+                    return Mono.just(new ServerError("An unexpected error occurred: " + e.getMessage(), "INTERNAL_SERVER_ERROR"));
+                });
+    }
+
+    private static boolean selectsDeviceFields(DataFetchingFieldSelectionSet selectionSet) {
+        return selectionSet.getImmediateFields().stream()
+                .flatMap(field -> field.getObjectTypeNames().stream())
+                .anyMatch(DEVICE_TYPE_NAMES::contains);
     }
 }
@@ -0,0 +1,50 @@
+package com.alesmontaldo.network_controller.user_interface.controller;
+
+import com.alesmontaldo.network_controller.application.DeviceService;
+import com.alesmontaldo.network_controller.codegen.types.*;
+import com.alesmontaldo.network_controller.domain.device.MacAddress;
+import graphql.schema.DataFetchingEnvironment;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import org.dataloader.DataLoader;
+import org.springframework.graphql.data.method.annotation.SchemaMapping;
+import org.springframework.graphql.execution.BatchLoaderRegistry;
+import org.springframework.stereotype.Controller;
+import reactor.core.publisher.Mono;
+
+/**
+ * Resolves the downlinkDevices field of the devices lazily, through a DataLoader keyed by uplink MAC address.
+ * The uplinks whose downlinks are requested at the same level of a query are batched into a single read,
+ * so a query asking for N levels of the topology costs N reads, and the levels it doesn't ask for are never loaded.
+ */
+@Controller
+public class DownlinkDevicesController {
+
+    static final String DOWNLINKS_LOADER = "downlinkDevices";
+
+    public DownlinkDevicesController(DeviceService deviceService, BatchLoaderRegistry batchLoaderRegistry) {
+        batchLoaderRegistry.<MacAddress, List<Device>>forName(DOWNLINKS_LOADER)
+                .registerMappedBatchLoader((uplinkMacs, environment) ->
+                        Mono.fromCallable(() -> deviceService.getDownlinks(uplinkMacs)));
+    }
+
+    @SchemaMapping(typeName = "Gateway", field = "downlinkDevices")
+    public CompletableFuture<List<Device>> gatewayDownlinks(Gateway gateway, DataFetchingEnvironment environment) {
+        return loadDownlinks(gateway, environment);
+    }
+
+    @SchemaMapping(typeName = "Switch", field = "downlinkDevices")
+    public CompletableFuture<List<Device>> switchDownlinks(Switch switchDevice, DataFetchingEnvironment environment) {
+        return loadDownlinks(switchDevice, environment);
+    }
+
+    @SchemaMapping(typeName = "AccessPoint", field = "downlinkDevices")
+    public CompletableFuture<List<Device>> accessPointDownlinks(AccessPoint accessPoint, DataFetchingEnvironment environment) {
+        return loadDownlinks(accessPoint, environment);
+    }
+
+    private static CompletableFuture<List<Device>> loadDownlinks(Device device, DataFetchingEnvironment environment) {
+        DataLoader<MacAddress, List<Device>> downlinksLoader = environment.getDataLoader(DOWNLINKS_LOADER);
+        return downlinksLoader.load(device.getMacAddress());
+    }
+}
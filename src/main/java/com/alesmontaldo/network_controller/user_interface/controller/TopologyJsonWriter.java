@@ -0,0 +1,52 @@
+package com.alesmontaldo.network_controller.user_interface.controller;
+
+import com.alesmontaldo.network_controller.codegen.types.DeviceType;
+import com.alesmontaldo.network_controller.domain.device.MacAddress;
+import com.alesmontaldo.network_controller.domain.device.persistance.TopologyVisitor;
+import com.fasterxml.jackson.core.JsonGenerator;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+
+/**
+ * Writes the visited topology as JSON while it is being visited, in the same format as the fullTopology query:
+ * an array with one object for each tree, where every device is an object with its MAC address as the only key
+ * and the list of its downlink devices as the value.
+ */
+class TopologyJsonWriter implements TopologyVisitor {
+
+    private final JsonGenerator generator;
+
+    TopologyJsonWriter(JsonGenerator generator) {
+        this.generator = generator;
+    }
+
+    void writeStart() throws IOException {
+        generator.writeStartArray();
+    }
+
+    void writeEnd() throws IOException {
+        generator.writeEndArray();
+        generator.flush();
+    }
+
+    @Override
+    public void enterDevice(MacAddress macAddress, DeviceType deviceType) {
+        try {
+            generator.writeStartObject();
+            generator.writeFieldName(macAddress.getValue());
+            generator.writeStartArray();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    @Override
+    public void exitDevice(MacAddress macAddress) {
+        try {
+            generator.writeEndArray();
+            generator.writeEndObject();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+}
@@ -0,0 +1,51 @@
+package com.alesmontaldo.network_controller.user_interface.controller;
+
+import com.alesmontaldo.network_controller.application.DeviceService;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+
+/**
+ * Streams the full network topology over plain HTTP.
+ * The JSON is written while the topology is visited, so the response doesn't need to be built in memory first,
+ * unlike with the fullTopology GraphQL query.
+ */
+@RestController
+public class TopologyStreamController {
+
+    private static final Logger log = LoggerFactory.getLogger(TopologyStreamController.class);
+
+    private final DeviceService deviceService;
+    private final ObjectMapper objectMapper;
+
+    public TopologyStreamController(DeviceService deviceService, ObjectMapper objectMapper) {
+        this.deviceService = deviceService;
+        this.objectMapper = objectMapper;
+    }
+
+    /**
+     * Once streaming has started the status can't be changed anymore:
+     * a failure while visiting the topology aborts the response, leaving an incomplete JSON document.
+     */
+    @GetMapping(path = "/topology", produces = MediaType.APPLICATION_JSON_VALUE)
+    public ResponseEntity<StreamingResponseBody> fullTopology() {
+        StreamingResponseBody body = outputStream -> {
+            try (JsonGenerator generator = objectMapper.getFactory().createGenerator(outputStream)) {
+                TopologyJsonWriter writer = new TopologyJsonWriter(generator);
+                writer.writeStart();
+                deviceService.visitFullTopology(writer);
+                writer.writeEnd();
+            } catch (Exception e) {
+                log.error("Error streaming full topology", e);
+                throw e;
+            }
+        };
+        return ResponseEntity.ok().contentType(MediaType.APPLICATION_JSON).body(body);
+    }
+}
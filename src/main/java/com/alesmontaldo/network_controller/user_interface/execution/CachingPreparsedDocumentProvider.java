@@ -0,0 +1,44 @@
+package com.alesmontaldo.network_controller.user_interface.execution;
+
+import graphql.ExecutionInput;
+import graphql.execution.preparsed.PreparsedDocumentEntry;
+import graphql.execution.preparsed.PreparsedDocumentProvider;
+import graphql.execution.preparsed.persisted.ApolloPersistedQuerySupport;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Function;
+
+/**
+ * Serves the parsed and validated documents of the GraphQL requests from a {@link PreparsedDocumentCache},
+ * so that repeated queries skip parsing and validation.
+ * <p>
+ * Requests carrying the {@code persistedQuery} extension follow the Automatic Persisted Queries protocol:
+ * once a query has been sent with its SHA-256 hash, later requests may send the hash alone.
+ * An unknown hash is answered with a {@code PersistedQueryNotFound} error, and the client sends the query again.
+ * Other requests are cached by the text of their query.
+ */
+public class CachingPreparsedDocumentProvider implements PreparsedDocumentProvider {
+
+    private static final String PERSISTED_QUERY_EXTENSION = "persistedQuery";
+
+    // Distinguishes the keys of the plain queries from the persisted query hashes
+    private record QueryText(String query) {
+    }
+
+    private final PreparsedDocumentCache cache;
+    private final ApolloPersistedQuerySupport persistedQuerySupport;
+
+    public CachingPreparsedDocumentProvider(PreparsedDocumentCache cache) {
+        this.cache = cache;
+        this.persistedQuerySupport = new ApolloPersistedQuerySupport(cache);
+    }
+
+    @Override
+    public CompletableFuture<PreparsedDocumentEntry> getDocumentAsync(ExecutionInput executionInput,
+                                                                      Function<ExecutionInput, PreparsedDocumentEntry> parseAndValidateFunction) {
+        if (executionInput.getExtensions().containsKey(PERSISTED_QUERY_EXTENSION)) {
+            return persistedQuerySupport.getDocumentAsync(executionInput, parseAndValidateFunction);
+        }
+        return cache.getPersistedQueryDocumentAsync(new QueryText(executionInput.getQuery()),
+                executionInput, query -> parseAndValidateFunction.apply(executionInput));
+    }
+}
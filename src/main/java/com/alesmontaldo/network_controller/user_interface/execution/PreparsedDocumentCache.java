@@ -0,0 +1,110 @@
+package com.alesmontaldo.network_controller.user_interface.execution;
+
+import graphql.ExecutionInput;
+import graphql.execution.preparsed.PreparsedDocumentEntry;
+import graphql.execution.preparsed.persisted.PersistedQueryCache;
+import graphql.execution.preparsed.persisted.PersistedQueryCacheMiss;
+import graphql.execution.preparsed.persisted.PersistedQueryNotFound;
+import java.util.LinkedHashMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Bounded cache of parsed and validated GraphQL documents, evicting the least recently used documents first.
+ * Keyed by the persisted query hash, or by any other key identifying the text of the query.
+ * <p>
+ * Documents which failed parsing or validation are not cached, so that invalid queries can't evict the valid ones.
+ * A miss parses and validates the query outside the lock: concurrent misses of the same query may both parse it.
+ */
+public class PreparsedDocumentCache implements PersistedQueryCache {
+
+    private final int maxEntries;
+
+    // Entries in access order, guarded by lock
+    private final LinkedHashMap<Object, PreparsedDocumentEntry> entries = new LinkedHashMap<>(16, 0.75f, true);
+    private final ReentrantLock lock = new ReentrantLock();
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+
+    /**
+     * @param maxEntries The maximum number of cached documents
+     */
+    public PreparsedDocumentCache(int maxEntries) {
+        if (maxEntries < 1) {
+            throw new IllegalArgumentException("The maximum number of cached documents must be positive: " + maxEntries);
+        }
+        this.maxEntries = maxEntries;
+    }
+
+    @Override
+    public CompletableFuture<PreparsedDocumentEntry> getPersistedQueryDocumentAsync(Object persistedQueryId,
+                                                                                  ExecutionInput executionInput,
+                                                                                  PersistedQueryCacheMiss onCacheMiss)
+            throws PersistedQueryNotFound {
+        PreparsedDocumentEntry cached = lookup(persistedQueryId);
+        if (cached != null) {
+            return CompletableFuture.completedFuture(cached);
+        }
+
+        // Throws PersistedQueryNotFound when only the hash of an unknown query was sent
+        PreparsedDocumentEntry parsed = onCacheMiss.apply(executionInput.getQuery());
+        if (!parsed.hasErrors()) {
+            store(persistedQueryId, parsed);
+        }
+        return CompletableFuture.completedFuture(parsed);
+    }
+
+    public int getSize() {
+        lock.lock();
+        try {
+            return entries.size();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public long getHits() {
+        return hits.sum();
+    }
+
+    public long getMisses() {
+        return misses.sum();
+    }
+
+    public long getEvictions() {
+        return evictions.sum();
+    }
+
+    private PreparsedDocumentEntry lookup(Object key) {
+        PreparsedDocumentEntry entry;
+        lock.lock();
+        try {
+            entry = entries.get(key);
+        } finally {
+            lock.unlock();
+        }
+
+        if (entry == null) {
+            misses.increment();
+        } else {
+            hits.increment();
+        }
+        return entry;
+    }
+
+    private void store(Object key, PreparsedDocumentEntry entry) {
+        lock.lock();
+        try {
+            entries.put(key, entry);
+            if (entries.size() > maxEntries) {
+                entries.pollFirstEntry();
+                evictions.increment();
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+}
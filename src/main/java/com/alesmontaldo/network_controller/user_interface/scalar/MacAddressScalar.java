@@ -1,6 +1,7 @@
 package com.alesmontaldo.network_controller.user_interface.scalar;
 
 import com.alesmontaldo.network_controller.domain.device.MacAddress;
+import com.alesmontaldo.network_controller.domain.device.MacAddressInterner;
 import graphql.GraphQLContext;
 import graphql.execution.CoercedVariables;
 import graphql.language.StringValue;
@@ -36,10 +37,13 @@ public class MacAddressScalar {
             .build();
 
     private static Object serializeMacAddress(Object dataFetcherResult) {
+        if (dataFetcherResult instanceof MacAddress macAddress) {
+            return macAddress.getValue();
+        }
 
         String serializedMacAddress = String.valueOf(dataFetcherResult);
         try {
-            return new MacAddress(serializedMacAddress).toString();
+            return MacAddressInterner.shared().intern(serializedMacAddress).toString();
         } catch (Exception e) {
             log.error("Error while serializing a mac address with exception: ", e);
             throw new CoercingSerializeException("Unable to serialize " + serializedMacAddress + " as a mac address");
@@ -53,7 +57,7 @@ public class MacAddressScalar {
 
         String serializedMacAddress = input.toString();
         try {
-            return new MacAddress(serializedMacAddress);
+            return MacAddressInterner.shared().intern(serializedMacAddress);
         } catch (Exception e) {
             log.error("Error while deserializing a mac address with exception: ", e);
             throw new CoercingParseValueException("Unable to deserializing " + serializedMacAddress + " as a mac address");
@@ -67,7 +71,7 @@ public class MacAddressScalar {
 
         String serializedMacAddress = ((StringValue) input).getValue();
         try {
-            return new MacAddress(serializedMacAddress);
+            return MacAddressInterner.shared().intern(serializedMacAddress);
         } catch (Exception e) {
             log.error("Error while deserializing a mac address with exception: ", e);
             throw new CoercingParseLiteralException("Value is not a mac address : '" + input + "'");
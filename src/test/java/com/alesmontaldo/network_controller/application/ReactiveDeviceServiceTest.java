@@ -0,0 +1,126 @@
+package com.alesmontaldo.network_controller.application;
+
+import com.alesmontaldo.network_controller.codegen.types.*;
+import com.alesmontaldo.network_controller.domain.device.MacAddress;
+import com.alesmontaldo.network_controller.domain.device.persistance.ReactiveDeviceRepository;
+import com.alesmontaldo.network_controller.domain.device.persistance.SubtreeFilter;
+import com.alesmontaldo.network_controller.domain.device.persistance.in_memory.DeviceInMemoryRepository;
+import jakarta.validation.ValidationException;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.support.StaticListableBeanFactory;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.util.List;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class ReactiveDeviceServiceTest {
+
+    private final MacAddress gatewayMac = new MacAddress("AA:BB:CC:DD:EE:FF");
+    private final MacAddress switchMac = new MacAddress("11:22:33:44:55:66");
+
+    // gateway -> switch
+    private Device tree() {
+        Switch switchDevice = new Switch(switchMac, gatewayMac, DeviceType.SWITCH, List.of());
+        return new Gateway(gatewayMac, null, DeviceType.GATEWAY, List.of(switchDevice));
+    }
+
+    private final ReactiveDeviceRepository reactiveRepository = new ReactiveDeviceRepository() {
+        @Override
+        public Flux<DeviceResultView> findAllViewsSorted() {
+            return Flux.just(new DeviceResultView(gatewayMac, DeviceType.GATEWAY), new DeviceResultView(switchMac, DeviceType.SWITCH));
+        }
+
+        @Override
+        public Mono<Device> fetchSubtree(MacAddress rootMac, SubtreeFilter filter) {
+            return gatewayMac.equals(rootMac) ? Mono.just(tree()) : Mono.empty();
+        }
+
+        @Override
+        public Flux<Device> fetchForest() {
+            return Flux.just(tree());
+        }
+    };
+
+    // Empty repository reading from its storage, as the MongoDB one does without the topology replica
+    private final DeviceInMemoryRepository storageRepository = new DeviceInMemoryRepository() {
+        @Override
+        public boolean readsFromMemory() {
+            return false;
+        }
+    };
+
+    private ReactiveDeviceService service(ReactiveDeviceRepository repository) {
+        return service(repository, new DeviceService(storageRepository));
+    }
+
+    private ReactiveDeviceService service(ReactiveDeviceRepository repository, DeviceService deviceService) {
+        StaticListableBeanFactory beanFactory = new StaticListableBeanFactory();
+        if (repository != null) {
+            beanFactory.addBean("reactiveDeviceRepository", repository);
+        }
+        return new ReactiveDeviceService(deviceService, beanFactory.getBeanProvider(ReactiveDeviceRepository.class));
+    }
+
+    @Test
+    void getSubtreeTopology_ExistingDevice_IsSimplified() {
+        // When
+        Map<String, Object> topology = service(reactiveRepository).getSubtreeTopology(gatewayMac).block();
+
+        // Then
+        assertThat(topology).isEqualTo(Map.of(gatewayMac.getValue(), List.of(Map.of(switchMac.getValue(), List.of()))));
+    }
+
+    @Test
+    void getSubtreeTopology_MissingDevice_FailsWithValidationError() {
+        // When / Then
+        assertThatThrownBy(() -> service(reactiveRepository).getSubtreeTopology(switchMac).block())
+                .isInstanceOf(ValidationException.class);
+    }
+
+    @Test
+    void getAllDevicesSorted_ReactiveRepository_EmitsResultViews() {
+        // When
+        List<DeviceResultView> devices = service(reactiveRepository).getAllDevicesSorted().collectList().block();
+
+        // Then
+        assertThat(devices).extracting("macAddress").containsExactly(gatewayMac, switchMac);
+    }
+
+    @Test
+    void getFullTopology_NoReactiveRepository_DelegatesToDeviceService() {
+        // When
+        List<Object> forest = service(null).getFullTopology().collectList().block();
+
+        // Then
+        assertThat(forest).isEmpty();
+    }
+
+    @Test
+    void getFullTopology_TopologyCacheEnabled_DelegatesToDeviceService() {
+        // Given
+        DeviceService cachedDeviceService = new DeviceService(storageRepository, new TopologyCache(1_000));
+
+        // When
+        List<Object> forest = service(reactiveRepository, cachedDeviceService).getFullTopology().collectList().block();
+
+        // Then
+        assertThat(forest).isEmpty();
+    }
+
+    @Test
+    void getSubtreeTopology_FilteredSubtree_BypassesTopologyCache() {
+        // Given
+        DeviceService cachedDeviceService = new DeviceService(storageRepository, new TopologyCache(1_000));
+
+        // When
+        Map<String, Object> topology = service(reactiveRepository, cachedDeviceService)
+                .getSubtreeTopology(gatewayMac, 1, null).block();
+
+        // Then
+        assertThat(topology).containsOnlyKeys(gatewayMac.getValue());
+    }
+}
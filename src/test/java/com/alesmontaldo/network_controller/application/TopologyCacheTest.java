@@ -0,0 +1,117 @@
+package com.alesmontaldo.network_controller.application;
+
+import com.alesmontaldo.network_controller.codegen.types.*;
+import com.alesmontaldo.network_controller.domain.device.MacAddress;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class TopologyCacheTest {
+
+    private final MacAddress gatewayMac = new MacAddress("AA:BB:CC:DD:EE:FF");
+    private final MacAddress switchMac = new MacAddress("11:22:33:44:55:66");
+    private final MacAddress otherGatewayMac = new MacAddress("FF:FF:FF:FF:FF:FF");
+
+    // gateway -> switch -> access point
+    private Device tree() {
+        AccessPoint accessPoint = new AccessPoint(new MacAddress("AA:BB:CC:11:22:33"), switchMac, DeviceType.ACCESS_POINT, List.of());
+        Switch switchDevice = new Switch(switchMac, gatewayMac, DeviceType.SWITCH, List.of(accessPoint));
+        return new Gateway(gatewayMac, null, DeviceType.GATEWAY, List.of(switchDevice));
+    }
+
+    private Device singleDevice(MacAddress mac) {
+        return new Gateway(mac, null, DeviceType.GATEWAY, List.of());
+    }
+
+    @Test
+    void getSubtree_SecondCall_IsServedFromCache() {
+        // Given
+        TopologyCache cache = new TopologyCache(100);
+        AtomicInteger loads = new AtomicInteger();
+
+        // When
+        Optional<Device> first = cache.getSubtree(gatewayMac, mac -> { loads.incrementAndGet(); return Optional.of(tree()); });
+        Optional<Device> second = cache.getSubtree(gatewayMac, mac -> { loads.incrementAndGet(); return Optional.of(tree()); });
+
+        // Then
+        assertThat(second).containsSame(first.orElseThrow());
+        assertThat(loads.get()).isEqualTo(1);
+        assertThat(cache.getHits()).isEqualTo(1);
+        assertThat(cache.getMisses()).isEqualTo(1);
+        assertThat(cache.getWeightedSize()).isEqualTo(3);
+    }
+
+    @Test
+    void getSubtree_OverNodeBudget_EvictsLeastRecentlyUsed() {
+        // Given - room for 4 devices: the 3 of the tree and a single device
+        TopologyCache cache = new TopologyCache(4);
+        cache.getSubtree(gatewayMac, mac -> Optional.of(tree()));
+        cache.getSubtree(otherGatewayMac, mac -> Optional.of(singleDevice(mac)));
+        cache.getSubtree(gatewayMac, mac -> Optional.of(tree())); // the other gateway is now the least recently used
+
+        // When
+        cache.getSubtree(switchMac, mac -> Optional.of(singleDevice(mac)));
+
+        // Then
+        assertThat(cache.getEvictions()).isEqualTo(1);
+        assertThat(cache.getWeightedSize()).isEqualTo(4);
+        AtomicInteger loads = new AtomicInteger();
+        cache.getSubtree(gatewayMac, mac -> { loads.incrementAndGet(); return Optional.of(tree()); });
+        cache.getSubtree(otherGatewayMac, mac -> { loads.incrementAndGet(); return Optional.of(singleDevice(mac)); });
+        assertThat(loads.get()).isEqualTo(1); // only the evicted one is loaded again
+    }
+
+    @Test
+    void invalidate_AncestorChain_OnlyRemovesAffectedTrees() {
+        // Given
+        TopologyCache cache = new TopologyCache(100);
+        cache.getSubtree(gatewayMac, mac -> Optional.of(tree()));
+        cache.getSubtree(otherGatewayMac, mac -> Optional.of(singleDevice(mac)));
+        cache.getForest(() -> List.of(tree(), singleDevice(otherGatewayMac)));
+
+        // When - a device is added below the switch
+        cache.invalidate(List.of(gatewayMac, switchMac));
+
+        // Then
+        AtomicInteger loads = new AtomicInteger();
+        cache.getSubtree(gatewayMac, mac -> { loads.incrementAndGet(); return Optional.of(tree()); });
+        cache.getSubtree(otherGatewayMac, mac -> { loads.incrementAndGet(); return Optional.of(singleDevice(mac)); });
+        cache.getForest(() -> { loads.incrementAndGet(); return List.of(); });
+        assertThat(loads.get()).isEqualTo(2); // the gateway subtree and the forest
+    }
+
+    @Test
+    void getSubtree_InvalidatedWhileLoading_IsNotCached() {
+        // Given
+        TopologyCache cache = new TopologyCache(100);
+
+        // When - a save happens while the subtree is being loaded
+        cache.getSubtree(gatewayMac, mac -> {
+            cache.invalidate(List.of(gatewayMac));
+            return Optional.of(tree());
+        });
+
+        // Then
+        assertThat(cache.getWeightedSize()).isZero();
+    }
+
+    @Test
+    void getSubtree_Disabled_AlwaysLoads() {
+        // Given
+        TopologyCache cache = new TopologyCache(0);
+        AtomicInteger loads = new AtomicInteger();
+
+        // When
+        cache.getSubtree(gatewayMac, mac -> { loads.incrementAndGet(); return Optional.of(tree()); });
+        cache.getSubtree(gatewayMac, mac -> { loads.incrementAndGet(); return Optional.of(tree()); });
+
+        // Then
+        assertThat(cache.isEnabled()).isFalse();
+        assertThat(loads.get()).isEqualTo(2);
+        assertThat(cache.getMisses()).isZero();
+    }
+}
@@ -0,0 +1,93 @@
+package com.alesmontaldo.network_controller.domain.device;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class MacAddressInternerTest {
+
+    @AfterEach
+    void tearDown() {
+        MacAddressInterner.resetShared();
+    }
+
+    @Test
+    void intern_SameMacAddress_ReturnsSameInstance() {
+        // Given
+        MacAddressInterner interner = new MacAddressInterner(1024);
+
+        // When
+        MacAddress first = interner.intern("AA:BB:CC:DD:EE:FF");
+        MacAddress second = interner.intern("aa:bb:cc:dd:ee:ff");
+
+        // Then
+        assertThat(second).isSameAs(first);
+        assertThat(interner.getHits()).isEqualTo(1);
+        assertThat(interner.getMisses()).isEqualTo(1);
+        assertThat(interner.getHitRate()).isEqualTo(0.5);
+    }
+
+    @Test
+    void intern_DifferentSeparators_ReturnsDifferentInstances() {
+        // Given
+        MacAddressInterner interner = new MacAddressInterner(1024);
+
+        // When
+        MacAddress withColons = interner.intern("AA:BB:CC:DD:EE:FF");
+        MacAddress withHyphens = interner.intern("AA-BB-CC-DD-EE-FF");
+
+        // Then
+        assertThat(withHyphens).isNotSameAs(withColons);
+        assertThat(withHyphens.getValue()).isEqualTo("AA-BB-CC-DD-EE-FF");
+    }
+
+    @Test
+    void intern_Disabled_ReturnsNewEqualInstances() {
+        // Given
+        MacAddressInterner interner = new MacAddressInterner(0);
+
+        // When
+        MacAddress first = interner.intern("AA:BB:CC:DD:EE:FF");
+        MacAddress second = interner.intern("AA:BB:CC:DD:EE:FF");
+
+        // Then
+        assertThat(interner.isEnabled()).isFalse();
+        assertThat(second).isNotSameAs(first).isEqualTo(first);
+        assertThat(interner.getHits()).isZero();
+    }
+
+    @Test
+    void intern_InvalidMacAddress_ThrowsIllegalArgumentException() {
+        // Given
+        MacAddressInterner interner = new MacAddressInterner(1024);
+
+        // When/Then
+        assertThatThrownBy(() -> interner.intern("AABBCCDDEEFF"))
+            .isInstanceOf(IllegalArgumentException.class)
+            .hasMessageContaining("Invalid MAC address");
+    }
+
+    @Test
+    void constructor_CapacityAboveMaximum_ThrowsIllegalArgumentException() {
+        // When/Then
+        assertThatThrownBy(() -> new MacAddressInterner(MacAddressInterner.MAX_CAPACITY + 1))
+            .isInstanceOf(IllegalArgumentException.class)
+            .hasMessageContaining("Capacity must not exceed");
+    }
+
+    @Test
+    void resetShared_AfterSetShared_RestoresDisabledPool() {
+        // Given
+        MacAddressInterner interner = new MacAddressInterner(1024);
+        MacAddressInterner.setShared(interner);
+
+        // When
+        MacAddressInterner.resetShared();
+
+        // Then
+        assertThat(MacAddressInterner.shared()).isNotSameAs(interner);
+        assertThat(MacAddressInterner.shared().isEnabled()).isFalse();
+    }
+}
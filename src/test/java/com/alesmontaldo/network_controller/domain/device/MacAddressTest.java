@@ -155,4 +155,49 @@ class MacAddressTest {
         // When/Then
         assertThat(macAddress1).hasSameHashCodeAs(macAddress2);
     }
+
+    @Test
+    void constructor_MixedSeparators_PreservedInValue() {
+        // Given
+        String mixedSeparatorsMac = "aa:bb-cc:dd-ee:ff";
+
+        // When
+        MacAddress macAddress = new MacAddress(mixedSeparatorsMac);
+
+        // Then
+        assertThat(macAddress.getValue()).isEqualTo("AA:BB-CC:DD-EE:FF");
+    }
+
+    @Test
+    void equals_SameAddressWithDifferentSeparators_ReturnsFalse() {
+        // Given
+        MacAddress withColons = new MacAddress("AA:BB:CC:DD:EE:FF");
+        MacAddress withHyphens = new MacAddress("AA-BB-CC-DD-EE-FF");
+
+        // When/Then
+        assertThat(withColons).isNotEqualTo(withHyphens);
+        assertThat(withColons.toLong()).isEqualTo(withHyphens.toLong());
+    }
+
+    @Test
+    void of_LongValue_FormattedWithColons() {
+        // Given
+        long address = 0x0123456789ABL;
+
+        // When
+        MacAddress macAddress = MacAddress.of(address);
+
+        // Then
+        assertThat(macAddress.getValue()).isEqualTo("01:23:45:67:89:AB");
+        assertThat(macAddress.toLong()).isEqualTo(address);
+        assertThat(macAddress).isEqualTo(new MacAddress("01:23:45:67:89:ab"));
+    }
+
+    @Test
+    void of_MoreThan48Bits_ThrowsIllegalArgumentException() {
+        // When/Then
+        assertThatThrownBy(() -> MacAddress.of(1L << 48))
+            .isInstanceOf(IllegalArgumentException.class)
+            .hasMessageContaining("Invalid MAC address");
+    }
 }
@@ -2,6 +2,8 @@ package com.alesmontaldo.network_controller.domain.device.persistance;
 
 import com.alesmontaldo.network_controller.codegen.types.*;
 import com.alesmontaldo.network_controller.domain.device.MacAddress;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
 import jakarta.validation.ValidationException;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
@@ -9,8 +11,10 @@ import org.junit.jupiter.api.Test;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.context.SpringBootTest;
 
+import java.util.ArrayList;
 import java.util.List;
 import java.util.Optional;
+import java.util.Set;
 
 import static org.assertj.core.api.Assertions.assertThat;
 import static org.assertj.core.api.Assertions.assertThatThrownBy;
@@ -23,6 +27,9 @@ public abstract class AbstractDeviceRepositoryTest {
     @Autowired
     protected DeviceRepository deviceRepository;
 
+    @Autowired
+    protected MeterRegistry meterRegistry;
+
     protected MacAddress gatewayMac = new MacAddress("AA:BB:CC:DD:EE:FF");
     protected MacAddress switchMac = new MacAddress("11:22:33:44:55:66");
     protected MacAddress accessPointMac = new MacAddress("AA:BB:CC:11:22:33");
@@ -86,6 +93,43 @@ public abstract class AbstractDeviceRepositoryTest {
                 );
     }
 
+    @Test
+    void findSortedPage_shouldReturnDevicesSortedByTypeAndMac_pageByPage() {
+        // Arrange - a second gateway, sorted before the existing one
+        MacAddress secondGatewayMac = new MacAddress("00:00:00:00:00:01");
+        deviceRepository.save(new Gateway(secondGatewayMac, null, DeviceType.GATEWAY, List.of()));
+
+        try {
+            // Act
+            List<Device> firstPage = deviceRepository.findSortedPage(null, null, 2);
+            List<Device> secondPage = deviceRepository.findSortedPage(null, DeviceSortKey.of(firstPage.getLast()), 2);
+            List<Device> switches = deviceRepository.findSortedPage(DeviceType.SWITCH, null, 10);
+
+            // Assert
+            assertThat(firstPage).extracting("macAddress").containsExactly(secondGatewayMac, gatewayMac);
+            assertThat(secondPage).extracting("macAddress").containsExactly(switchMac, accessPointMac);
+            assertThat(switches).extracting("macAddress").containsExactly(switchMac);
+        } finally {
+            cleanupTestDevice(secondGatewayMac);
+        }
+    }
+
+    @Test
+    void findViews_shouldReturnMacAndTypeOnly_sortedByTypeAndMac() {
+        // Act
+        Optional<DeviceResultView> switchView = deviceRepository.findViewById(switchMac);
+        Optional<DeviceResultView> missingView = deviceRepository.findViewById(new MacAddress("FF:FF:FF:FF:FF:FF"));
+        List<DeviceResultView> allViews = deviceRepository.findAllViewsSorted();
+
+        // Assert
+        assertThat(switchView).isPresent();
+        assertThat(switchView.get().getMacAddress()).isEqualTo(switchMac);
+        assertThat(switchView.get().getDeviceType()).isEqualTo(DeviceType.SWITCH);
+        assertThat(missingView).isEmpty();
+        assertThat(allViews).extracting("macAddress").containsExactly(gatewayMac, switchMac, accessPointMac);
+        assertThat(allViews).extracting("deviceType").containsExactly(DeviceType.GATEWAY, DeviceType.SWITCH, DeviceType.ACCESS_POINT);
+    }
+
     @Test
     void save_shouldSaveDevice_whenDeviceIsValid() {
         // Arrange
@@ -111,6 +155,27 @@ public abstract class AbstractDeviceRepositoryTest {
         }
     }
 
+    @Test
+    void save_shouldRecordCycleCheckHops_whenDeviceHasUplink() {
+        // Arrange - gateway -> switch -> access point -> new access point
+        MacAddress newMac = new MacAddress("FF:FF:FF:FF:FF:FF");
+        AccessPoint newAccessPoint = new AccessPoint(newMac, accessPointMac, DeviceType.ACCESS_POINT, List.of());
+        DistributionSummary cycleCheckHops = meterRegistry.get("topology.cycle.check.hops").summary();
+        long countBefore = cycleCheckHops.count();
+        double hopsBefore = cycleCheckHops.totalAmount();
+
+        try {
+            // Act
+            deviceRepository.save(newAccessPoint);
+
+            // Assert - the three uplinks of the new device were checked
+            assertThat(cycleCheckHops.count()).isEqualTo(countBefore + 1);
+            assertThat(cycleCheckHops.totalAmount() - hopsBefore).isEqualTo(3);
+        } finally {
+            cleanupTestDevice(newMac);
+        }
+    }
+
     @Test
     void save_shouldThrowException_whenUplinkDeviceDoesNotExist() {
         // Arrange
@@ -209,4 +274,161 @@ public abstract class AbstractDeviceRepositoryTest {
         assertThat(rootDevice.getUplinkMacAddress()).isEqualTo(gatewayMac);
         assertThat(children).extracting("macAddress").doesNotContain(gatewayMac);
     }
+
+    @Test
+    void fetchSubtree_shouldStopAtMaxDepth() {
+        // Act
+        Optional<Device> rootOnly = deviceRepository.fetchSubtree(gatewayMac, new SubtreeFilter(0, null));
+        Optional<Device> oneLevel = deviceRepository.fetchSubtree(gatewayMac, new SubtreeFilter(1, null));
+
+        // Assert
+        assertThat(rootOnly).isPresent();
+        assertThat(rootOnly.get().getDownlinkDevices()).isEmpty();
+
+        assertThat(oneLevel).isPresent();
+        assertThat(oneLevel.get().getDownlinkDevices()).extracting("macAddress").containsExactly(switchMac);
+        assertThat(oneLevel.get().getDownlinkDevices().getFirst().getDownlinkDevices()).isEmpty();
+    }
+
+    @Test
+    void fetchSubtree_shouldSkipExcludedDeviceTypes_andTheirDownlinks() {
+        // Act
+        Optional<Device> switchesOnly = deviceRepository.fetchSubtree(gatewayMac, new SubtreeFilter(null, Set.of(DeviceType.SWITCH)));
+        Optional<Device> accessPointsOnly = deviceRepository.fetchSubtree(gatewayMac, new SubtreeFilter(null, Set.of(DeviceType.ACCESS_POINT)));
+
+        // Assert
+        assertThat(switchesOnly).isPresent();
+        assertThat(switchesOnly.get().getDownlinkDevices()).extracting("macAddress").containsExactly(switchMac);
+        assertThat(switchesOnly.get().getDownlinkDevices().getFirst().getDownlinkDevices()).isEmpty();
+
+        // The access point hangs off the excluded switch, so it can't be reached from the gateway
+        assertThat(accessPointsOnly).isPresent();
+        assertThat(accessPointsOnly.get().getDownlinkDevices()).isEmpty();
+    }
+
+    @Test
+    void findDownlinks_shouldReturnDirectDownlinksOnly() {
+        // Act
+        List<Device> gatewayDownlinks = deviceRepository.findDownlinks(List.of(gatewayMac));
+        List<Device> bothLevels = deviceRepository.findDownlinks(List.of(gatewayMac, switchMac));
+        List<Device> leafDownlinks = deviceRepository.findDownlinks(List.of(accessPointMac));
+
+        // Assert
+        assertThat(gatewayDownlinks).extracting("macAddress").containsExactly(switchMac);
+        assertThat(bothLevels).extracting("macAddress").containsExactlyInAnyOrder(switchMac, accessPointMac);
+        assertThat(leafDownlinks).isEmpty();
+    }
+
+    @Test
+    void fetchForest_shouldReturnOneTreePerRootDevice() {
+        // Arrange - add a second, unconnected gateway
+        MacAddress secondGatewayMac = new MacAddress("FF:FF:FF:FF:FF:FF");
+        try {
+            deviceRepository.save(new Gateway(secondGatewayMac, null, DeviceType.GATEWAY, List.of()));
+
+            // Act
+            List<Device> forest = deviceRepository.fetchForest();
+
+            // Assert
+            assertThat(forest).extracting("macAddress").containsExactlyInAnyOrder(gatewayMac, secondGatewayMac);
+            Device firstTree = forest.stream()
+                    .filter(root -> root.getMacAddress().equals(gatewayMac))
+                    .findFirst()
+                    .orElseThrow();
+            assertThat(firstTree.getDownlinkDevices()).extracting("macAddress").containsExactly(switchMac);
+            assertThat(firstTree.getDownlinkDevices().getFirst().getDownlinkDevices())
+                    .extracting("macAddress").containsExactly(accessPointMac);
+        } finally {
+            cleanupTestDevice(secondGatewayMac);
+        }
+    }
+
+    @Test
+    void visitForest_shouldVisitDevicesDepthFirst() {
+        // Arrange
+        List<String> events = new ArrayList<>();
+        TopologyVisitor visitor = new TopologyVisitor() {
+            @Override
+            public void enterDevice(MacAddress macAddress, DeviceType deviceType) {
+                events.add("enter " + macAddress);
+            }
+
+            @Override
+            public void exitDevice(MacAddress macAddress) {
+                events.add("exit " + macAddress);
+            }
+        };
+
+        // Act
+        deviceRepository.visitForest(visitor);
+
+        // Assert
+        assertThat(events).containsExactly(
+                "enter " + gatewayMac,
+                "enter " + switchMac,
+                "enter " + accessPointMac,
+                "exit " + accessPointMac,
+                "exit " + switchMac,
+                "exit " + gatewayMac
+        );
+    }
+
+    @Test
+    void saveAll_shouldSaveBatch_whenUplinksAreListedInAnyOrder() {
+        // Arrange - the access point comes before its uplink switch, which uplinks to an existing device
+        MacAddress newSwitchMac = new MacAddress("DD:DD:DD:DD:DD:DD");
+        MacAddress newAccessPointMac = new MacAddress("EE:EE:EE:EE:EE:EE");
+        List<Device> batch = List.of(
+                new AccessPoint(newAccessPointMac, newSwitchMac, DeviceType.ACCESS_POINT, List.of()),
+                new Switch(newSwitchMac, gatewayMac, DeviceType.SWITCH, List.of())
+        );
+
+        try {
+            // Act
+            List<Device> savedDevices = deviceRepository.saveAll(batch);
+
+            // Assert
+            assertThat(savedDevices).extracting("macAddress").containsExactlyInAnyOrder(newSwitchMac, newAccessPointMac);
+            Optional<Device> newSwitchSubtree = deviceRepository.fetchSubtree(newSwitchMac);
+            assertThat(newSwitchSubtree).isPresent();
+            assertThat(newSwitchSubtree.get().getDownlinkDevices()).extracting("macAddress").containsExactly(newAccessPointMac);
+        } finally {
+            cleanupTestDevice(newAccessPointMac);
+            cleanupTestDevice(newSwitchMac);
+        }
+    }
+
+    @Test
+    void saveAll_shouldThrowException_whenBatchContainsCycle() {
+        // Arrange
+        MacAddress firstMac = new MacAddress("DD:DD:DD:DD:DD:DD");
+        MacAddress secondMac = new MacAddress("EE:EE:EE:EE:EE:EE");
+        List<Device> batch = List.of(
+                new Switch(firstMac, secondMac, DeviceType.SWITCH, List.of()),
+                new Switch(secondMac, firstMac, DeviceType.SWITCH, List.of())
+        );
+
+        // Act & Assert
+        assertThatThrownBy(() -> deviceRepository.saveAll(batch))
+                .isInstanceOf(ValidationException.class)
+                .hasMessageContaining("circular connection");
+        assertThat(deviceRepository.findById(firstMac)).isEmpty();
+        assertThat(deviceRepository.findById(secondMac)).isEmpty();
+    }
+
+    @Test
+    void saveAll_shouldThrowException_whenDeviceAlreadyExists() {
+        // Arrange
+        MacAddress newMac = new MacAddress("DD:DD:DD:DD:DD:DD");
+        List<Device> batch = List.of(
+                new Switch(newMac, gatewayMac, DeviceType.SWITCH, List.of()),
+                new AccessPoint(accessPointMac, newMac, DeviceType.ACCESS_POINT, List.of())
+        );
+
+        // Act & Assert
+        assertThatThrownBy(() -> deviceRepository.saveAll(batch))
+                .isInstanceOf(ValidationException.class)
+                .hasMessageContaining("already exists");
+        assertThat(deviceRepository.findById(newMac)).isEmpty();
+    }
 }
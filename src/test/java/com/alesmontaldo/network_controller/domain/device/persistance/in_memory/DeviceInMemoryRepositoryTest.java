@@ -5,9 +5,17 @@ import com.alesmontaldo.network_controller.domain.device.MacAddress;
 import com.alesmontaldo.network_controller.domain.device.persistance.AbstractDeviceRepositoryTest;
 import org.junit.jupiter.api.AfterEach;
 import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
 import org.springframework.test.context.ActiveProfiles;
 
+import java.util.ArrayList;
 import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.assertj.core.api.Assertions.assertThat;
 
 @ActiveProfiles("in-memory")
 public class DeviceInMemoryRepositoryTest extends AbstractDeviceRepositoryTest {
@@ -48,4 +56,52 @@ public class DeviceInMemoryRepositoryTest extends AbstractDeviceRepositoryTest {
     protected void cleanupTestDevice(MacAddress mac) {
         getInMemoryRepository().removeDevice(mac);
     }
+
+    @Test
+    void fetchSubtree_shouldFollowUplinkChange_whenDeviceIsMoved() {
+        // Arrange - move the access point from the switch directly under the gateway
+        AccessPoint movedAccessPoint = new AccessPoint(accessPointMac, gatewayMac, DeviceType.ACCESS_POINT, List.of());
+
+        // Act
+        deviceRepository.save(movedAccessPoint);
+        Optional<Device> gatewaySubtree = deviceRepository.fetchSubtree(gatewayMac);
+        Optional<Device> switchSubtree = deviceRepository.fetchSubtree(switchMac);
+
+        // Assert
+        assertThat(gatewaySubtree).isPresent();
+        assertThat(gatewaySubtree.get().getDownlinkDevices()).extracting("macAddress")
+                .containsExactlyInAnyOrder(switchMac, accessPointMac);
+        assertThat(switchSubtree).isPresent();
+        assertThat(switchSubtree.get().getDownlinkDevices()).isEmpty();
+    }
+
+    @Test
+    void save_shouldStoreAllDevices_whenNewDevicesAreInsertedConcurrently() throws Exception {
+        // Arrange - 8 writers, each adding its own access points under the switch
+        int writers = 8;
+        int devicesPerWriter = 100;
+        List<Future<?>> results = new ArrayList<>();
+
+        // Act
+        try (ExecutorService executor = Executors.newFixedThreadPool(writers)) {
+            for (int writer = 0; writer < writers; writer++) {
+                int writerIndex = writer;
+                results.add(executor.submit(() -> {
+                    for (int i = 0; i < devicesPerWriter; i++) {
+                        MacAddress mac = new MacAddress(String.format("02:00:00:00:%02X:%02X", writerIndex, i));
+                        deviceRepository.save(new AccessPoint(mac, switchMac, DeviceType.ACCESS_POINT, List.of()));
+                    }
+                }));
+            }
+            for (Future<?> result : results) {
+                result.get();
+            }
+        }
+
+        // Assert
+        assertThat(deviceRepository.findAll()).hasSize(3 + writers * devicesPerWriter);
+        assertThat(deviceRepository.fetchSubtree(switchMac).orElseThrow().getDownlinkDevices())
+                .hasSize(1 + writers * devicesPerWriter);
+        assertThat(getInMemoryRepository().sortedDevices).hasSize(3 + writers * devicesPerWriter);
+    }
 }
@@ -1,14 +1,20 @@
 package com.alesmontaldo.network_controller.domain.device.persistance.mongo_db;
 
+import com.alesmontaldo.network_controller.codegen.types.AccessPoint;
 import com.alesmontaldo.network_controller.codegen.types.DeviceType;
 import com.alesmontaldo.network_controller.domain.device.MacAddress;
 import com.alesmontaldo.network_controller.domain.device.persistance.AbstractDeviceRepositoryTest;
 import org.junit.jupiter.api.AfterEach;
 import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.test.context.ActiveProfiles;
 import org.springframework.test.context.TestPropertySource;
 
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
 @ActiveProfiles("mongo")
 @TestPropertySource(properties = {
         "spring.data.mongodb.database=network-controller_test_db"
@@ -61,4 +67,18 @@ public class DeviceMongoRepositoryTest extends AbstractDeviceRepositoryTest {
     protected void cleanupTestDevice(MacAddress mac) {
         mongoRepository.deleteById(mac);
     }
+
+    @Test
+    void save_shouldMaterializeAncestorsPath() {
+        // Arrange - the test data is written without ancestors, as before paths were materialized
+        MacAddress newMac = new MacAddress("FF:FF:FF:FF:FF:FF");
+        AccessPoint newAccessPoint = new AccessPoint(newMac, accessPointMac, DeviceType.ACCESS_POINT, List.of());
+
+        // Act
+        deviceRepository.save(newAccessPoint);
+
+        // Assert
+        DeviceDocument saved = mongoRepository.findById(newMac).orElseThrow();
+        assertThat(saved.getAncestors()).containsExactly(gatewayMac, switchMac, accessPointMac);
+    }
 }
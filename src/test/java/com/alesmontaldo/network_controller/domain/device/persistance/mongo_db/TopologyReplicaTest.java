@@ -0,0 +1,99 @@
+package com.alesmontaldo.network_controller.domain.device.persistance.mongo_db;
+
+import com.alesmontaldo.network_controller.codegen.types.*;
+import com.alesmontaldo.network_controller.domain.device.MacAddress;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class TopologyReplicaTest {
+
+    private final MacAddress gatewayMac = new MacAddress("AA:BB:CC:DD:EE:FF");
+    private final MacAddress switchMac = new MacAddress("11:22:33:44:55:66");
+    private final MacAddress accessPointMac = new MacAddress("AA:BB:CC:11:22:33");
+
+    private TopologyReplica loadedReplica() {
+        TopologyReplica replica = new TopologyReplica();
+        replica.load(List.of(
+                new Gateway(gatewayMac, null, DeviceType.GATEWAY, null),
+                new Switch(switchMac, gatewayMac, DeviceType.SWITCH, null),
+                new AccessPoint(accessPointMac, switchMac, DeviceType.ACCESS_POINT, null)
+        ));
+        return replica;
+    }
+
+    @Test
+    void load_Devices_ServesSubtreesAndAncestors() {
+        // Given
+        TopologyReplica replica = loadedReplica();
+
+        // When
+        Device subtree = replica.fetchSubtree(gatewayMac).orElseThrow();
+
+        // Then
+        assertThat(replica.isReady()).isTrue();
+        assertThat(subtree.getDownlinkDevices()).extracting("macAddress").containsExactly(switchMac);
+        assertThat(subtree.getDownlinkDevices().getFirst().getDownlinkDevices()).extracting("macAddress").containsExactly(accessPointMac);
+        assertThat(replica.findAncestors(accessPointMac)).containsExactly(gatewayMac, switchMac);
+    }
+
+    @Test
+    void apply_MovedDevice_LeavesPreviousUplink() {
+        // Given
+        TopologyReplica replica = loadedReplica();
+
+        // When - the access point is moved directly under the gateway
+        replica.apply(new AccessPoint(accessPointMac, gatewayMac, DeviceType.ACCESS_POINT, null));
+
+        // Then
+        assertThat(replica.fetchSubtree(switchMac).orElseThrow().getDownlinkDevices()).isEmpty();
+        assertThat(replica.fetchSubtree(gatewayMac).orElseThrow().getDownlinkDevices())
+                .extracting("macAddress").containsExactlyInAnyOrder(switchMac, accessPointMac);
+    }
+
+    @Test
+    void remove_Device_IsNoLongerServed() {
+        // Given
+        TopologyReplica replica = loadedReplica();
+
+        // When
+        replica.remove(accessPointMac);
+
+        // Then
+        assertThat(replica.findById(accessPointMac)).isEmpty();
+        assertThat(replica.fetchSubtree(switchMac).orElseThrow().getDownlinkDevices()).isEmpty();
+    }
+
+    @Test
+    void invalidate_LoadedReplica_IsNotReady() {
+        // Given
+        TopologyReplica replica = loadedReplica();
+
+        // When
+        replica.invalidate();
+
+        // Then
+        assertThat(replica.isReady()).isFalse();
+    }
+
+    @Test
+    void apply_Device_PreviousSnapshotIsUnchanged() {
+        // Given
+        TopologyReplica replica = loadedReplica();
+        TopologySnapshot before = replica.snapshot();
+        MacAddress newAccessPointMac = new MacAddress("AA:BB:CC:44:55:66");
+
+        // When
+        replica.apply(new AccessPoint(newAccessPointMac, switchMac, DeviceType.ACCESS_POINT, null));
+
+        // Then - readers holding the previous version keep seeing it
+        assertThat(before.findById(newAccessPointMac)).isEmpty();
+        assertThat(before.fetchSubtree(switchMac).orElseThrow().getDownlinkDevices())
+                .extracting("macAddress").containsExactly(accessPointMac);
+        assertThat(replica.snapshot().size()).isEqualTo(4);
+        assertThat(replica.fetchSubtree(switchMac).orElseThrow().getDownlinkDevices())
+                .extracting("macAddress").containsExactlyInAnyOrder(accessPointMac, newAccessPointMac);
+    }
+}
@@ -0,0 +1,114 @@
+package com.alesmontaldo.network_controller.infrastructure.lock;
+
+import com.alesmontaldo.network_controller.domain.device.persistance.mongo_db.lock.TopologyLockDocument;
+import com.mongodb.client.MongoClient;
+import com.mongodb.client.MongoClients;
+import com.mongodb.client.result.DeleteResult;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.bson.Document;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Query;
+
+import java.time.Duration;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class DistributedLockServiceTest {
+
+    // Never connected, only required to build the template
+    private final MongoClient mongoClient = MongoClients.create();
+    private final InMemoryLockTemplate mongoTemplate = new InMemoryLockTemplate(mongoClient);
+
+    /**
+     * Stores the lock documents in a map, with the same insert and owner checked remove semantics as MongoDB,
+     * and counts the insertion attempts.
+     */
+    static class InMemoryLockTemplate extends MongoTemplate {
+
+        private final Map<String, String> ownersByLockId = new ConcurrentHashMap<>();
+        private final AtomicInteger inserts = new AtomicInteger();
+
+        InMemoryLockTemplate(MongoClient mongoClient) {
+            super(mongoClient, "test");
+        }
+
+        @Override
+        public <T> T insert(T objectToSave) {
+            inserts.incrementAndGet();
+            TopologyLockDocument lock = (TopologyLockDocument) objectToSave;
+            if (ownersByLockId.putIfAbsent(lock.getId(), lock.getOwner()) != null) {
+                throw new DuplicateKeyException("Lock already held: " + lock.getId());
+            }
+            return objectToSave;
+        }
+
+        @Override
+        public DeleteResult remove(Query query, Class<?> entityClass) {
+            Document queryObject = query.getQueryObject();
+            Collection<?> lockIds = (Collection<?>) queryObject.get("_id", Document.class).get("$in");
+            Object owner = queryObject.get("owner");
+            long deletedCount = lockIds.stream()
+                    .filter(lockId -> ownersByLockId.remove(lockId, owner))
+                    .count();
+            return DeleteResult.acknowledged(deletedCount);
+        }
+    }
+
+    @AfterEach
+    void tearDown() {
+        mongoClient.close();
+    }
+
+    @Test
+    void acquireLocks_SecondLockHeld_WaitsBetweenAttempts() {
+        // Given - the second lock is held by another node, so only the poll interval ends the waits
+        String firstLockId = TopologyLockDocument.treeLockId("AA:AA:AA:AA:AA:AA");
+        String secondLockId = TopologyLockDocument.treeLockId("BB:BB:BB:BB:BB:BB");
+        mongoTemplate.ownersByLockId.put(secondLockId, "other-node");
+        DistributedLockService lockService = new DistributedLockService(mongoTemplate,
+                Duration.ofMillis(300), Duration.ofMillis(50), new SimpleMeterRegistry());
+
+        // When
+        String lockToken = lockService.acquireLocks(new TreeSet<>(List.of(firstLockId, secondLockId)));
+
+        // Then - about one attempt per poll interval, each inserting both locks
+        assertThat(lockToken).isNull();
+        assertThat(mongoTemplate.inserts.get()).isLessThanOrEqualTo(2 * (300 / 50 + 2));
+        assertThat(mongoTemplate.ownersByLockId).containsOnlyKeys(secondLockId);
+    }
+
+    @Test
+    void acquireLocks_LockReleasedByThisNode_WakesUpWaiter() throws Exception {
+        // Given - a poll interval longer than the test, so only the release signal can wake the waiter up
+        DistributedLockService lockService = new DistributedLockService(mongoTemplate,
+                Duration.ofSeconds(10), Duration.ofSeconds(10), new SimpleMeterRegistry());
+        TreeSet<String> lockIds = new TreeSet<>(List.of(TopologyLockDocument.GLOBAL_LOCK_ID));
+        String holderToken = lockService.acquireLocks(lockIds);
+
+        // When
+        Thread releaser = Thread.ofVirtual().start(() -> {
+            try {
+                Thread.sleep(100);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            lockService.releaseLocks(lockIds, holderToken);
+        });
+        long start = System.nanoTime();
+        String waiterToken = lockService.acquireLocks(lockIds);
+        releaser.join();
+
+        // Then
+        assertThat(waiterToken).isNotNull();
+        assertThat(Duration.ofNanos(System.nanoTime() - start)).isLessThan(Duration.ofSeconds(5));
+    }
+}
@@ -0,0 +1,72 @@
+package com.alesmontaldo.network_controller.user_interface.configuration;
+
+import com.alesmontaldo.network_controller.codegen.types.*;
+import com.alesmontaldo.network_controller.domain.device.MacAddress;
+import graphql.schema.GraphQLInterfaceType;
+import graphql.schema.GraphQLNamedType;
+import graphql.schema.GraphQLSchema;
+import graphql.schema.GraphQLUnionType;
+import graphql.schema.idl.SchemaParser;
+import graphql.schema.idl.UnExecutableSchemaGenerator;
+import org.junit.jupiter.api.Test;
+import org.springframework.core.io.ClassPathResource;
+
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class ClassTypeResolverTest {
+
+    static GraphQLSchema loadSchema() throws IOException {
+        try (Reader reader = new InputStreamReader(new ClassPathResource("graphql/schema.graphqls").getInputStream(), StandardCharsets.UTF_8)) {
+            return UnExecutableSchemaGenerator.makeUnExecutableSchema(new SchemaParser().parse(reader));
+        }
+    }
+
+    @Test
+    void resolve_RegisteredClasses_ResolveToTheirObjectTypes() throws IOException {
+        // Given
+        GraphQLSchema schema = loadSchema();
+        ClassTypeResolver resolver = new ClassTypeResolver(GraphQLConfig.OBJECT_TYPE_NAMES);
+        MacAddress mac = new MacAddress("AA:BB:CC:DD:EE:FF");
+
+        // When / Then
+        assertThat(resolver.resolve(new Gateway(mac, null, DeviceType.GATEWAY, List.of()), schema).getName()).isEqualTo("Gateway");
+        assertThat(resolver.resolve(new AccessPoint(mac, mac, DeviceType.ACCESS_POINT, List.of()), schema).getName()).isEqualTo("AccessPoint");
+        assertThat(resolver.resolve(new DeviceResultView(mac, DeviceType.SWITCH), schema).getName()).isEqualTo("DeviceResultView");
+        assertThat(resolver.resolve(new ValidationError("invalid"), schema).getName()).isEqualTo("ValidationError");
+    }
+
+    @Test
+    void abstractTypeNames_Schema_CoverEveryUnionAndInterface() throws IOException {
+        // Given
+        GraphQLSchema schema = loadSchema();
+
+        // When / Then - every union and interface of the schema is wired to the resolver
+        List<String> abstractTypes = schema.getAllTypesAsList().stream()
+                .filter(type -> type instanceof GraphQLUnionType || type instanceof GraphQLInterfaceType)
+                .map(type -> ((GraphQLNamedType) type).getName())
+                .filter(name -> !name.startsWith("__"))
+                .toList();
+        assertThat(GraphQLConfig.ABSTRACT_TYPE_NAMES).containsExactlyInAnyOrderElementsOf(abstractTypes);
+    }
+
+    @Test
+    void resolve_NewSchema_RebuildsTheRegistry() throws IOException {
+        // Given
+        ClassTypeResolver resolver = new ClassTypeResolver(GraphQLConfig.OBJECT_TYPE_NAMES);
+        JsonResult value = new JsonResult();
+        GraphQLSchema firstSchema = loadSchema();
+        GraphQLSchema secondSchema = loadSchema();
+
+        // When
+        resolver.resolve(value, firstSchema);
+
+        // Then
+        assertThat(resolver.resolve(value, secondSchema)).isSameAs(secondSchema.getObjectType("JsonResult"));
+    }
+}
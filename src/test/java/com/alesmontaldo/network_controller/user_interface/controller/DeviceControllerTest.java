@@ -22,6 +22,7 @@ import org.springframework.test.context.ActiveProfiles;
 import org.springframework.test.context.TestPropertySource;
 import org.springframework.web.client.RestClient;
 
+import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
 import java.util.UUID;
@@ -230,6 +231,71 @@ public class DeviceControllerTest {
                    errorMessage.contains("loop"));
     }
 
+    @Test
+    void testAddDevices_Success_WithUplinksInAnyOrder() {
+        // Add a gateway as uplink for the batch
+        String gatewayMac = generateUniqueMac();
+        addDevice(gatewayMac, null, DeviceType.GATEWAY);
+
+        // The access point comes before the switch it uplinks to
+        String switchMac = generateUniqueMac();
+        String apMac = generateUniqueMac();
+
+        DeviceInput apInput = new DeviceInput();
+        apInput.setMacAddress(new MacAddress(apMac));
+        apInput.setDeviceType(DeviceType.ACCESS_POINT);
+        apInput.setUplinkMacAddress(new MacAddress(switchMac));
+
+        DeviceInput switchInput = new DeviceInput();
+        switchInput.setMacAddress(new MacAddress(switchMac));
+        switchInput.setDeviceType(DeviceType.SWITCH);
+        switchInput.setUplinkMacAddress(new MacAddress(gatewayMac));
+
+        GraphQlResponse response = this.client.documentName("addDevices")
+                .variable("inputs", List.of(apInput, switchInput))
+                .executeSync();
+
+        Map<String, Object> responseData = response.getData();
+        List<Map<String, Object>> addDevicesData = (List<Map<String, Object>>) responseData.get("addDevices");
+
+        log.info("Add Devices Result: " + addDevicesData);
+
+        // Check that both devices were added
+        assertEquals(2, addDevicesData.size());
+        assertThat(addDevicesData).extracting(deviceData -> deviceData.get("macAddress").toString().toUpperCase())
+                .containsExactlyInAnyOrder(apMac.toUpperCase(), switchMac.toUpperCase());
+    }
+
+    @Test
+    void testAddDevices_ValidationError_CyclicBatch() {
+        String firstMac = generateUniqueMac();
+        String secondMac = generateUniqueMac();
+
+        DeviceInput firstInput = new DeviceInput();
+        firstInput.setMacAddress(new MacAddress(firstMac));
+        firstInput.setDeviceType(DeviceType.SWITCH);
+        firstInput.setUplinkMacAddress(new MacAddress(secondMac));
+
+        DeviceInput secondInput = new DeviceInput();
+        secondInput.setMacAddress(new MacAddress(secondMac));
+        secondInput.setDeviceType(DeviceType.SWITCH);
+        secondInput.setUplinkMacAddress(new MacAddress(firstMac));
+
+        GraphQlResponse response = this.client.documentName("addDevices")
+                .variable("inputs", List.of(firstInput, secondInput))
+                .executeSync();
+
+        Map<String, Object> responseData = response.getData();
+        List<Map<String, Object>> addDevicesData = (List<Map<String, Object>>) responseData.get("addDevices");
+
+        log.info("Add Devices Cyclic Batch Result: " + addDevicesData);
+
+        // Check that we have a single error response
+        assertEquals(1, addDevicesData.size());
+        assertNotNull(addDevicesData.getFirst().get("message"));
+        assertTrue(addDevicesData.getFirst().get("message").toString().toLowerCase().contains("circular"));
+    }
+
     // ========== GET DEVICE TESTS ==========
 
     @Test
@@ -277,6 +343,37 @@ public class DeviceControllerTest {
                 errorMessage.toLowerCase().contains("cannot be found"));
     }
 
+    @Test
+    void testGetDevice_Success_WithDownlinkDevices() {
+        // Create gateway -> switch -> access point
+        String gatewayMac = generateUniqueMac();
+        String switchMac = generateUniqueMac();
+        String accessPointMac = generateUniqueMac();
+        addDevice(gatewayMac, null, DeviceType.GATEWAY);
+        addDevice(switchMac, gatewayMac, DeviceType.SWITCH);
+        addDevice(accessPointMac, switchMac, DeviceType.ACCESS_POINT);
+
+        // Get the gateway with two levels of downlinks
+        GraphQlResponse response = this.client.documentName("getDeviceWithDownlinks")
+                .variable("input", new MacAddress(gatewayMac))
+                .executeSync();
+
+        Map<String, Object> responseData = response.getData();
+        Map<String, Object> getDeviceData = (Map<String, Object>) responseData.get("getDevice");
+
+        log.info("Get Device With Downlinks Result: " + getDeviceData);
+
+        // Check the device and its downlinks
+        assertEquals(gatewayMac.toUpperCase(), getDeviceData.get("macAddress").toString().toUpperCase());
+        List<Map<String, Object>> downlinks = (List<Map<String, Object>>) getDeviceData.get("downlinkDevices");
+        assertEquals(1, downlinks.size());
+        assertEquals(switchMac.toUpperCase(), downlinks.getFirst().get("macAddress").toString().toUpperCase());
+        List<Map<String, Object>> secondLevel = (List<Map<String, Object>>) downlinks.getFirst().get("downlinkDevices");
+        assertEquals(1, secondLevel.size());
+        assertEquals(accessPointMac.toUpperCase(), secondLevel.getFirst().get("macAddress").toString().toUpperCase());
+        assertEquals(DeviceType.ACCESS_POINT.toString(), secondLevel.getFirst().get("deviceType").toString());
+    }
+
     // ========== ALL DEVICES SORTED TESTS ==========
 
     @Test
@@ -319,6 +416,68 @@ public class DeviceControllerTest {
         }
     }
 
+    // ========== DEVICES CONNECTION TESTS ==========
+
+    @Test
+    void testDevicesConnection_Success_PageByPage() {
+        String gatewayMac = generateUniqueMac();
+        addDevice(gatewayMac, null, DeviceType.GATEWAY);
+
+        String switchMac = generateUniqueMac();
+        addDevice(switchMac, gatewayMac, DeviceType.SWITCH);
+
+        String apMac = generateUniqueMac();
+        addDevice(apMac, switchMac, DeviceType.ACCESS_POINT);
+
+        // First page
+        GraphQlResponse firstResponse = this.client.documentName("devicesConnection")
+                .variable("first", 2)
+                .executeSync();
+        Map<String, Object> firstPage = (Map<String, Object>) ((Map<String, Object>) firstResponse.getData()).get("devicesConnection");
+        Map<String, Object> firstPageInfo = (Map<String, Object>) firstPage.get("pageInfo");
+
+        log.info("Devices Connection First Page: " + firstPage);
+
+        assertEquals(2, ((List<?>) firstPage.get("edges")).size());
+        assertEquals(true, firstPageInfo.get("hasNextPage"));
+
+        // Second page, after the end cursor of the first one
+        GraphQlResponse secondResponse = this.client.documentName("devicesConnection")
+                .variable("first", 2)
+                .variable("after", firstPageInfo.get("endCursor"))
+                .executeSync();
+        Map<String, Object> secondPage = (Map<String, Object>) ((Map<String, Object>) secondResponse.getData()).get("devicesConnection");
+        Map<String, Object> secondPageInfo = (Map<String, Object>) secondPage.get("pageInfo");
+
+        log.info("Devices Connection Second Page: " + secondPage);
+
+        assertEquals(false, secondPageInfo.get("hasNextPage"));
+
+        // Devices are sorted by type over the pages
+        List<Map<String, Object>> edges = new ArrayList<>((List<Map<String, Object>>) firstPage.get("edges"));
+        edges.addAll((List<Map<String, Object>>) secondPage.get("edges"));
+        List<String> deviceTypes = edges.stream()
+                .map(edge -> ((Map<String, Object>) edge.get("node")).get("deviceType").toString())
+                .toList();
+        assertEquals(List.of("GATEWAY", "SWITCH", "ACCESS_POINT"), deviceTypes);
+    }
+
+    @Test
+    void testDevicesConnection_ValidationError_InvalidCursor() {
+        GraphQlResponse response = this.client.documentName("devicesConnection")
+                .variable("first", 2)
+                .variable("after", "not-a-cursor")
+                .executeSync();
+
+        Map<String, Object> responseData = response.getData();
+        Map<String, Object> connectionData = (Map<String, Object>) responseData.get("devicesConnection");
+
+        log.info("Devices Connection Invalid Cursor Result: " + connectionData);
+
+        assertNotNull(connectionData.get("message"));
+        assertTrue(connectionData.get("message").toString().contains("Invalid cursor"));
+    }
+
     // ========== FULL TOPOLOGY TESTS ==========
 
     @Test
@@ -360,6 +519,29 @@ public class DeviceControllerTest {
         }
     }
 
+    @Test
+    void testStreamedFullTopology_Success() throws Exception {
+        String gatewayMac = generateUniqueMac();
+        addDevice(gatewayMac, null, DeviceType.GATEWAY);
+
+        String switchMac = generateUniqueMac();
+        addDevice(switchMac, gatewayMac, DeviceType.SWITCH);
+
+        // Get the streamed full topology over plain HTTP
+        String body = builder.clone().baseUrl("http://localhost:" + port).build()
+                .get()
+                .uri("/topology")
+                .retrieve()
+                .body(String.class);
+
+        log.info("Streamed Full Topology Result: " + body);
+
+        // Same format as the fullTopology query
+        JsonNode expected = objectMapper.readTree(
+                "[{\"" + gatewayMac.toUpperCase() + "\":[{\"" + switchMac.toUpperCase() + "\":[]}]}]");
+        assertEquals(expected, objectMapper.readTree(body));
+    }
+
     // ========== DEVICE TOPOLOGY TESTS ==========
 
     @Test
@@ -0,0 +1,78 @@
+package com.alesmontaldo.network_controller.user_interface.execution;
+
+import graphql.ExecutionInput;
+import graphql.GraphqlErrorBuilder;
+import graphql.execution.preparsed.PreparsedDocumentEntry;
+import graphql.parser.Parser;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class PreparsedDocumentCacheTest {
+
+    private static final String QUERY = "{ allDevicesSorted { __typename } }";
+
+    private final ExecutionInput executionInput = ExecutionInput.newExecutionInput(QUERY).build();
+
+    @Test
+    void getPersistedQueryDocument_SecondCall_IsServedFromCache() {
+        // Given
+        PreparsedDocumentCache cache = new PreparsedDocumentCache(10);
+        AtomicInteger parses = new AtomicInteger();
+
+        // When
+        PreparsedDocumentEntry first = cache.getPersistedQueryDocumentAsync("hash", executionInput, query -> {
+            parses.incrementAndGet();
+            return new PreparsedDocumentEntry(Parser.parse(query));
+        }).join();
+        PreparsedDocumentEntry second = cache.getPersistedQueryDocumentAsync("hash", executionInput, query -> {
+            parses.incrementAndGet();
+            return new PreparsedDocumentEntry(Parser.parse(query));
+        }).join();
+
+        // Then
+        assertThat(second).isSameAs(first);
+        assertThat(parses.get()).isEqualTo(1);
+        assertThat(cache.getHits()).isEqualTo(1);
+        assertThat(cache.getMisses()).isEqualTo(1);
+    }
+
+    @Test
+    void getPersistedQueryDocument_OverMaxEntries_EvictsLeastRecentlyUsed() {
+        // Given
+        PreparsedDocumentCache cache = new PreparsedDocumentCache(2);
+        cache.getPersistedQueryDocumentAsync("first", executionInput, query -> new PreparsedDocumentEntry(Parser.parse(query)));
+        cache.getPersistedQueryDocumentAsync("second", executionInput, query -> new PreparsedDocumentEntry(Parser.parse(query)));
+        cache.getPersistedQueryDocumentAsync("first", executionInput, query -> new PreparsedDocumentEntry(Parser.parse(query))); // "second" is now the least recently used
+
+        // When
+        cache.getPersistedQueryDocumentAsync("third", executionInput, query -> new PreparsedDocumentEntry(Parser.parse(query)));
+
+        // Then
+        assertThat(cache.getEvictions()).isEqualTo(1);
+        assertThat(cache.getSize()).isEqualTo(2);
+        AtomicInteger parses = new AtomicInteger();
+        cache.getPersistedQueryDocumentAsync("first", executionInput, query -> {
+            parses.incrementAndGet();
+            return new PreparsedDocumentEntry(Parser.parse(query));
+        }).join();
+        assertThat(parses.get()).isZero();
+    }
+
+    @Test
+    void getPersistedQueryDocument_InvalidDocument_IsNotCached() {
+        // Given
+        PreparsedDocumentCache cache = new PreparsedDocumentCache(10);
+        PreparsedDocumentEntry invalid = new PreparsedDocumentEntry(List.of(GraphqlErrorBuilder.newError().message("invalid").build()));
+
+        // When
+        PreparsedDocumentEntry result = cache.getPersistedQueryDocumentAsync("hash", executionInput, query -> invalid).join();
+
+        // Then
+        assertThat(result).isSameAs(invalid);
+        assertThat(cache.getSize()).isZero();
+    }
+}